@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.List;
+
+/*
+    Checks that the rows ForecastLoader formats hold what ForecastAdapter used to work out on
+    every bind.
+ */
+public class TestForecastItems extends AndroidTestCase {
+
+    // In the order of ForecastFragment's COL_* indices.
+    private static final String[] COLUMNS = {
+            WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // Clear, rain, and a condition with no icon or art.
+    private static final int[] WEATHER_IDS = {800, 502, 9999};
+
+    public void testItemsMatchCursor() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int i = 0; i < 10; i++) {
+            cursor.addRow(new Object[] {
+                    i,
+                    today + i * DateUtils.DAY_IN_MILLIS,
+                    "Asteroids",
+                    21.5 - i,
+                    -3.4 + i,
+                    "99705",
+                    WEATHER_IDS[i % WEATHER_IDS.length],
+                    64.7488,
+                    -147.353
+            });
+        }
+
+        List<ForecastItem> items = ForecastLoader.getItems(mContext, cursor);
+        assertEquals("Error: wrong number of items", cursor.getCount(), items.size());
+
+        SettingsSnapshot settings = SettingsSnapshot.get(mContext);
+        for (int i = 0; i < items.size(); i++) {
+            ForecastItem item = items.get(i);
+            cursor.moveToPosition(i);
+            long date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            String high = Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+            String low = Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+            String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+
+            assertEquals("Error: date differs in row " + i, date, item.date);
+            assertEquals("Error: transition name differs in row " + i,
+                    "iconView" + i, item.transitionName);
+            assertEquals("Error: friendly date differs in row " + i,
+                    Utility.getFriendlyDayString(mContext, date, false), item.friendlyDate);
+            assertEquals("Error: today's friendly date differs in row " + i,
+                    Utility.getFriendlyDayString(mContext, date, true), item.todayFriendlyDate);
+            assertEquals("Error: description differs in row " + i,
+                    description, item.description);
+            assertEquals("Error: description for accessibility differs in row " + i,
+                    mContext.getString(R.string.a11y_forecast, description),
+                    item.descriptionA11y);
+            assertEquals("Error: high differs in row " + i, high, item.high);
+            assertEquals("Error: high for accessibility differs in row " + i,
+                    mContext.getString(R.string.a11y_high_temp, high), item.highA11y);
+            assertEquals("Error: low differs in row " + i, low, item.low);
+            assertEquals("Error: low for accessibility differs in row " + i,
+                    mContext.getString(R.string.a11y_low_temp, low), item.lowA11y);
+            assertEquals("Error: icon differs in row " + i,
+                    Utility.getIconResourceForWeatherCondition(weatherId), item.iconResource);
+            assertEquals("Error: art differs in row " + i,
+                    Utility.getArtResourceForWeatherCondition(weatherId), item.artResource);
+            assertEquals("Error: art URL differs in row " + i,
+                    settings.localGraphics ? null : settings.getArtUrl(weatherId), item.artUrl);
+        }
+        cursor.close();
+    }
+
+    public void testItemsCantBeModified() {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        List<ForecastItem> items = ForecastLoader.getItems(mContext, cursor);
+        try {
+            items.clear();
+            fail("Error: the items of a load can be modified");
+        } catch (UnsupportedOperationException e) {
+            // Expected.
+        }
+        cursor.close();
+    }
+}
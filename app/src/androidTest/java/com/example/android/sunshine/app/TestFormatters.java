@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/*
+    Checks the cached temperature strings and day labels against the formatting they replaced,
+    and counts the objects allocated to format one forecast row both ways.  The counts are
+    written to logcat under the LOG_TAG of this class.
+ */
+public class TestFormatters extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestFormatters.class.getSimpleName();
+
+    // Halves, small negatives and values outside the cached range.
+    private static final double[] EDGE_TEMPERATURES = {
+            0.0, -0.0, 0.4, -0.4, 0.5, -0.5, 2.5, -2.5, 99.5, -99.5, 149.5, 150.5, -100.5,
+            1e9, -1e9, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+    };
+
+    // Like the forecast list: a couple of days back, today, and two weeks ahead.
+    private static final int FIRST_DAY = -2;
+    private static final int LAST_DAY = 14;
+
+    private static final int BENCHMARK_ROUNDS = 50;
+
+    private void checkTemperature(double temperature) {
+        for (boolean isMetric : new boolean[] {true, false}) {
+            assertEquals("Error: temperature differs for " + temperature + " metric " + isMetric,
+                    legacyFormatTemperature(mContext, temperature, isMetric),
+                    Utility.formatTemperature(mContext, temperature, isMetric));
+        }
+    }
+
+    public void testTemperaturesMatchLegacy() {
+        for (int tenths = -1200; tenths <= 1700; tenths++) {
+            checkTemperature(tenths / 10.0);
+        }
+        for (double temperature : EDGE_TEMPERATURES) {
+            checkTemperature(temperature);
+        }
+    }
+
+    private static long dayMillis(int offset) {
+        return WeatherContract.normalizeDate(
+                System.currentTimeMillis() + offset * DateUtils.DAY_IN_MILLIS);
+    }
+
+    public void testDayLabelsMatchLegacy() {
+        // Twice, so the second pass is served from the labels kept by the first.
+        for (int pass = 0; pass < 2; pass++) {
+            for (int offset = FIRST_DAY; offset <= LAST_DAY; offset++) {
+                long date = dayMillis(offset);
+                assertEquals("Error: friendly day differs for day " + offset,
+                        legacyFriendlyDayString(mContext, date, false),
+                        Utility.getFriendlyDayString(mContext, date, false));
+                assertEquals("Error: long friendly day differs for day " + offset,
+                        legacyFriendlyDayString(mContext, date, true),
+                        Utility.getFriendlyDayString(mContext, date, true));
+                assertEquals("Error: full friendly day differs for day " + offset,
+                        legacyFullFriendlyDayString(mContext, date),
+                        Utility.getFullFriendlyDayString(mContext, date));
+                assertEquals("Error: day name differs for day " + offset,
+                        legacyDayName(mContext, date), Utility.getDayName(mContext, date));
+                assertEquals("Error: month and day differ for day " + offset,
+                        legacyFormattedMonthDay(date),
+                        Utility.getFormattedMonthDay(mContext, date));
+            }
+        }
+    }
+
+    private interface Row {
+        int bind(long date, double high, double low);
+    }
+
+    /*
+        Formats the text of the forecast rows as ForecastAdapter does, and returns the objects
+        allocated per row on this thread.
+     */
+    private double allocationsPerRow(Row row) {
+        long[] dates = new long[LAST_DAY - FIRST_DAY + 1];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = dayMillis(FIRST_DAY + i);
+        }
+        int checksum = 0;
+        // Once untimed, so first-use costs like filling the caches aren't counted.
+        for (int i = 0; i < dates.length; i++) {
+            checksum += row.bind(dates[i], 20.3 + i, 11.6 - i);
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            for (int i = 0; i < dates.length; i++) {
+                checksum += row.bind(dates[i], 20.3 + i, 11.6 - i);
+            }
+        }
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+        // Keeps the formatting from being optimized away.
+        assertTrue(checksum != 42);
+        return allocations / (double) (BENCHMARK_ROUNDS * dates.length);
+    }
+
+    public void testAllocationsPerRow() {
+        final boolean isMetric = Utility.isMetric(mContext);
+        double legacy = allocationsPerRow(new Row() {
+            @Override
+            public int bind(long date, double high, double low) {
+                return legacyFriendlyDayString(mContext, date, true).length()
+                        + legacyFormatTemperature(mContext, high, isMetric).length()
+                        + legacyFormatTemperature(mContext, low, isMetric).length();
+            }
+        });
+        double cached = allocationsPerRow(new Row() {
+            @Override
+            public int bind(long date, double high, double low) {
+                return Utility.getFriendlyDayString(mContext, date, true).length()
+                        + Utility.formatTemperature(mContext, high, isMetric).length()
+                        + Utility.formatTemperature(mContext, low, isMetric).length();
+            }
+        });
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "allocations per row: before %.1f, after %.1f", legacy, cached));
+        assertTrue("Error: formatting a row allocates more than it used to",
+                cached <= legacy);
+    }
+
+    /*
+        The formatting as it was before the caches, kept as the reference.
+     */
+    private static String legacyFormatTemperature(Context context, double temperature,
+                                                  boolean isMetric) {
+        if (!isMetric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        return String.format(context.getString(R.string.format_temperature), temperature);
+    }
+
+    private static String legacyFriendlyDayString(Context context, long dateInMillis,
+                                                  boolean displayLongToday) {
+        Time time = new Time();
+        time.setToNow();
+        long currentTime = System.currentTimeMillis();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
+
+        if (displayLongToday && julianDay == currentJulianDay) {
+            String today = context.getString(R.string.today);
+            int formatId = R.string.format_full_friendly_date;
+            return String.format(context.getString(
+                    formatId,
+                    today,
+                    legacyFormattedMonthDay(dateInMillis)));
+        } else if ( julianDay < currentJulianDay + 7 ) {
+            return legacyDayName(context, dateInMillis);
+        } else {
+            SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
+            return shortenedDateFormat.format(dateInMillis);
+        }
+    }
+
+    private static String legacyFullFriendlyDayString(Context context, long dateInMillis) {
+        String day = legacyDayName(context, dateInMillis);
+        int formatId = R.string.format_full_friendly_date;
+        return String.format(context.getString(
+                formatId,
+                day,
+                legacyFormattedMonthDay(dateInMillis)));
+    }
+
+    private static String legacyDayName(Context context, long dateInMillis) {
+        Time t = new Time();
+        t.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
+        if (julianDay == currentJulianDay) {
+            return context.getString(R.string.today);
+        } else if ( julianDay == currentJulianDay +1 ) {
+            return context.getString(R.string.tomorrow);
+        } else {
+            Time time = new Time();
+            time.setToNow();
+            SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
+            return dayFormat.format(dateInMillis);
+        }
+    }
+
+    private static String legacyFormattedMonthDay(long dateInMillis) {
+        Time time = new Time();
+        time.setToNow();
+        SimpleDateFormat dbDateFormat = new SimpleDateFormat(Utility.DATE_FORMAT);
+        SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMMM dd");
+        return monthDayFormat.format(dateInMillis);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Checks that the settings snapshot follows the preferences it caches.  The snapshot is
+    rebuilt on the main thread, after each commit returns, so the tests poll for the change.
+ */
+public class TestSettingsSnapshot extends AndroidTestCase {
+
+    private static final String TEST_LOCATION = "99705";
+
+    private String mLocationKey;
+    private String mUnitsKey;
+    private String mLocationStatusKey;
+    private String mSavedLocation;
+    private String mSavedUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mLocationKey = mContext.getString(R.string.pref_location_key);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mLocationStatusKey = mContext.getString(R.string.pref_location_status_key);
+        mSavedLocation = getPrefs().getString(mLocationKey, null);
+        mSavedUnits = getPrefs().getString(mUnitsKey, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        getPrefs().edit()
+                .putString(mLocationKey, mSavedLocation)
+                .putString(mUnitsKey, mSavedUnits)
+                .commit();
+        super.tearDown();
+    }
+
+    private SharedPreferences getPrefs() {
+        return PreferenceManager.getDefaultSharedPreferences(mContext);
+    }
+
+    public void testFollowsLocation() {
+        getPrefs().edit().putString(mLocationKey, TEST_LOCATION).commit();
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return TEST_LOCATION.equals(SettingsSnapshot.get(mContext).location);
+            }
+        }.run();
+        assertEquals("Error: Utility doesn't read the location from the snapshot",
+                TEST_LOCATION, Utility.getPreferredLocation(mContext));
+    }
+
+    public void testFollowsUnits() {
+        final boolean metric = SettingsSnapshot.get(mContext).metric;
+        getPrefs().edit().putString(mUnitsKey, mContext.getString(
+                metric ? R.string.pref_units_imperial : R.string.pref_units_metric)).commit();
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return SettingsSnapshot.get(mContext).metric != metric;
+            }
+        }.run();
+        assertEquals("Error: Utility doesn't read the units from the snapshot",
+                !metric, Utility.isMetric(mContext));
+    }
+
+    public void testIgnoresOtherSettings() throws InterruptedException {
+        SettingsSnapshot before = SettingsSnapshot.get(mContext);
+        int status = getPrefs().getInt(mLocationStatusKey,
+                SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+        // Only a real change notifies the listeners.
+        getPrefs().edit().putInt(mLocationStatusKey,
+                status == SunshineSyncAdapter.LOCATION_STATUS_OK
+                        ? SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN
+                        : SunshineSyncAdapter.LOCATION_STATUS_OK).commit();
+        // Give the listener a chance to run.
+        Thread.sleep(500);
+        assertSame("Error: the snapshot was rebuilt for a setting it doesn't hold",
+                before, SettingsSnapshot.get(mContext));
+        getPrefs().edit().putInt(mLocationStatusKey, status).commit();
+    }
+}
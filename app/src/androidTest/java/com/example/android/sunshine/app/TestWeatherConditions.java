@@ -0,0 +1,454 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.Locale;
+
+/*
+    Checks the condition tables against the if/else chains they replaced, for every id up to
+    WeatherConditions.MAX_WEATHER_ID and a few outside the range, and compares their speed.
+    Lookups/sec are written to logcat under the LOG_TAG of this class.
+ */
+public class TestWeatherConditions extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherConditions.class.getSimpleName();
+
+    private static final int[] OUT_OF_RANGE_IDS =
+            {-1, Integer.MIN_VALUE, WeatherConditions.MAX_WEATHER_ID + 1, Integer.MAX_VALUE};
+
+    private static final int BENCHMARK_ROUNDS = 20;
+
+    private String mArtPackKey;
+    private String mSavedArtPack;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mArtPackKey = mContext.getString(R.string.pref_art_pack_key);
+        mSavedArtPack = getPrefs().getString(mArtPackKey, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        getPrefs().edit().putString(mArtPackKey, mSavedArtPack).commit();
+        super.tearDown();
+    }
+
+    private SharedPreferences getPrefs() {
+        return PreferenceManager.getDefaultSharedPreferences(mContext);
+    }
+
+    // The settings snapshot is rebuilt on the main thread, after the commit returns.
+    private void waitForArtPack(final String artPack) {
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return artPack.equals(SettingsSnapshot.get(mContext).artPack);
+            }
+        }.run();
+    }
+
+    private void checkId(int weatherId) {
+        assertEquals("Error: icon differs for " + weatherId,
+                legacyIconResource(weatherId),
+                Utility.getIconResourceForWeatherCondition(weatherId));
+        assertEquals("Error: art differs for " + weatherId,
+                legacyArtResource(weatherId), Utility.getArtResourceForWeatherCondition(weatherId));
+        assertEquals("Error: art URL differs for " + weatherId,
+                legacyArtUrl(mContext, weatherId),
+                Utility.getArtUrlForWeatherCondition(mContext, weatherId));
+        assertEquals("Error: description differs for " + weatherId,
+                legacyString(mContext, weatherId),
+                Utility.getStringForWeatherCondition(mContext, weatherId));
+        assertEquals("Error: image URL differs for " + weatherId,
+                legacyImageUrl(weatherId), Utility.getImageUrlForWeatherCondition(weatherId));
+    }
+
+    public void testMatchesLegacyLookups() {
+        // Each art pack has its own memoized URLs.
+        String[] artPacks = {
+                mContext.getString(R.string.pref_art_pack_sunshine),
+                mContext.getString(R.string.pref_art_pack_cute_dogs)
+        };
+        for (String artPack : artPacks) {
+            getPrefs().edit().putString(mArtPackKey, artPack).commit();
+            waitForArtPack(artPack);
+            for (int weatherId = 0; weatherId <= WeatherConditions.MAX_WEATHER_ID; weatherId++) {
+                checkId(weatherId);
+            }
+            for (int weatherId : OUT_OF_RANGE_IDS) {
+                checkId(weatherId);
+            }
+        }
+    }
+
+    private interface Lookup {
+        int run(int weatherId);
+    }
+
+    private double lookupsPerSecond(Lookup lookup) {
+        int checksum = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            for (int weatherId = 0; weatherId <= WeatherConditions.MAX_WEATHER_ID; weatherId++) {
+                checksum += lookup.run(weatherId);
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        // Keeps the lookups from being optimized away.
+        assertTrue(checksum != 42);
+        return BENCHMARK_ROUNDS * (WeatherConditions.MAX_WEATHER_ID + 1) / (elapsedNanos / 1e9);
+    }
+
+    public void testBenchmark() {
+        double legacyIcons = lookupsPerSecond(new Lookup() {
+            @Override
+            public int run(int weatherId) {
+                return legacyIconResource(weatherId) + legacyArtResource(weatherId);
+            }
+        });
+        double tableIcons = lookupsPerSecond(new Lookup() {
+            @Override
+            public int run(int weatherId) {
+                return Utility.getIconResourceForWeatherCondition(weatherId)
+                        + Utility.getArtResourceForWeatherCondition(weatherId);
+            }
+        });
+        double legacyArtUrls = lookupsPerSecond(new Lookup() {
+            @Override
+            public int run(int weatherId) {
+                String url = legacyArtUrl(mContext, weatherId);
+                return url == null ? 0 : url.length();
+            }
+        });
+        double tableArtUrls = lookupsPerSecond(new Lookup() {
+            @Override
+            public int run(int weatherId) {
+                String url = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+                return url == null ? 0 : url.length();
+            }
+        });
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "icon + art: chains %10.0f/s, table %10.0f/s (%.2fx)",
+                legacyIcons, tableIcons, tableIcons / legacyIcons));
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "art URL:    chains %10.0f/s, table %10.0f/s (%.2fx)",
+                legacyArtUrls, tableArtUrls, tableArtUrls / legacyArtUrls));
+    }
+
+    /*
+        The lookups as they were before the tables, kept as the reference.
+     */
+    private static int legacyIconResource(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+
+    private static String legacyArtUrl(Context context, int weatherId) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String formatArtUrl = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                context.getString(R.string.pref_art_pack_sunshine));
+
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return String.format(Locale.US, formatArtUrl, "light_rain");
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId == 511) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return String.format(Locale.US, formatArtUrl, "fog");
+        } else if (weatherId == 761 || weatherId == 781) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId == 800) {
+            return String.format(Locale.US, formatArtUrl, "clear");
+        } else if (weatherId == 801) {
+            return String.format(Locale.US, formatArtUrl, "light_clouds");
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return String.format(Locale.US, formatArtUrl, "clouds");
+        }
+        return null;
+    }
+
+    private static int legacyArtResource(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return -1;
+    }
+
+    private static String legacyString(Context context, int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        int stringId;
+        if (weatherId >= 200 && weatherId <= 232) {
+            stringId = R.string.condition_2xx;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            stringId = R.string.condition_3xx;
+        } else switch (weatherId) {
+            case 500:
+                stringId = R.string.condition_500;
+                break;
+            case 501:
+                stringId = R.string.condition_501;
+                break;
+            case 502:
+                stringId = R.string.condition_502;
+                break;
+            case 503:
+                stringId = R.string.condition_503;
+                break;
+            case 504:
+                stringId = R.string.condition_504;
+                break;
+            case 511:
+                stringId = R.string.condition_511;
+                break;
+            case 520:
+                stringId = R.string.condition_520;
+                break;
+            case 531:
+                stringId = R.string.condition_531;
+                break;
+            case 600:
+                stringId = R.string.condition_600;
+                break;
+            case 601:
+                stringId = R.string.condition_601;
+                break;
+            case 602:
+                stringId = R.string.condition_602;
+                break;
+            case 611:
+                stringId = R.string.condition_611;
+                break;
+            case 612:
+                stringId = R.string.condition_612;
+                break;
+            case 615:
+                stringId = R.string.condition_615;
+                break;
+            case 616:
+                stringId = R.string.condition_616;
+                break;
+            case 620:
+                stringId = R.string.condition_620;
+                break;
+            case 621:
+                stringId = R.string.condition_621;
+                break;
+            case 622:
+                stringId = R.string.condition_622;
+                break;
+            case 701:
+                stringId = R.string.condition_701;
+                break;
+            case 711:
+                stringId = R.string.condition_711;
+                break;
+            case 721:
+                stringId = R.string.condition_721;
+                break;
+            case 731:
+                stringId = R.string.condition_731;
+                break;
+            case 741:
+                stringId = R.string.condition_741;
+                break;
+            case 751:
+                stringId = R.string.condition_751;
+                break;
+            case 761:
+                stringId = R.string.condition_761;
+                break;
+            case 762:
+                stringId = R.string.condition_762;
+                break;
+            case 771:
+                stringId = R.string.condition_771;
+                break;
+            case 781:
+                stringId = R.string.condition_781;
+                break;
+            case 800:
+                stringId = R.string.condition_800;
+                break;
+            case 801:
+                stringId = R.string.condition_801;
+                break;
+            case 802:
+                stringId = R.string.condition_802;
+                break;
+            case 803:
+                stringId = R.string.condition_803;
+                break;
+            case 804:
+                stringId = R.string.condition_804;
+                break;
+            case 900:
+                stringId = R.string.condition_900;
+                break;
+            case 901:
+                stringId = R.string.condition_901;
+                break;
+            case 902:
+                stringId = R.string.condition_902;
+                break;
+            case 903:
+                stringId = R.string.condition_903;
+                break;
+            case 904:
+                stringId = R.string.condition_904;
+                break;
+            case 905:
+                stringId = R.string.condition_905;
+                break;
+            case 906:
+                stringId = R.string.condition_906;
+                break;
+            case 951:
+                stringId = R.string.condition_951;
+                break;
+            case 952:
+                stringId = R.string.condition_952;
+                break;
+            case 953:
+                stringId = R.string.condition_953;
+                break;
+            case 954:
+                stringId = R.string.condition_954;
+                break;
+            case 955:
+                stringId = R.string.condition_955;
+                break;
+            case 956:
+                stringId = R.string.condition_956;
+                break;
+            case 957:
+                stringId = R.string.condition_957;
+                break;
+            case 958:
+                stringId = R.string.condition_958;
+                break;
+            case 959:
+                stringId = R.string.condition_959;
+                break;
+            case 960:
+                stringId = R.string.condition_960;
+                break;
+            case 961:
+                stringId = R.string.condition_961;
+                break;
+            case 962:
+                stringId = R.string.condition_962;
+                break;
+            default:
+                return context.getString(R.string.condition_unknown, weatherId);
+        }
+        return context.getString(stringId);
+    }
+
+    private static String legacyImageUrl(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId == 511) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        } else if (weatherId == 800) {
+            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        } else if (weatherId == 801) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Locale;
+
+/*
+    Compares the compiled-statement insert path of WeatherProvider.bulkInsert with the
+    ContentValues loop it replaced.  Rows/sec for each batch size are written to logcat under
+    the LOG_TAG of this class.
+ */
+public class TestBulkInsertBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestBulkInsertBenchmark.class.getSimpleName();
+
+    private static final int[] BATCH_SIZES = {14, 1000, 100000};
+    private static final long MILLISECONDS_IN_A_DAY = 1000 * 60 * 60 * 24;
+
+    private SQLiteDatabase mDb;
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDb = new WeatherDbHelper(mContext).getWritableDatabase();
+        mLocationRowId = mDb.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        assertTrue(mLocationRowId != -1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    private ContentValues[] createRows(int count) {
+        ContentValues[] rows = new ContentValues[count];
+        long date = TestUtilities.TEST_DATE;
+        for (int i = 0; i < count; i++, date += MILLISECONDS_IN_A_DAY) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(mLocationRowId);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    WeatherContract.normalizeDate(date));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 75 + i % 20);
+            rows[i] = weatherValues;
+        }
+        return rows;
+    }
+
+    private interface Insert {
+        int run(SQLiteDatabase db, ContentValues[] rows);
+    }
+
+    private double rowsPerSecond(ContentValues[] rows, Insert insert) {
+        mDb.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+        long start = System.nanoTime();
+        mDb.beginTransaction();
+        int inserted;
+        try {
+            inserted = insert.run(mDb, rows);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        assertEquals(rows.length, inserted);
+        return rows.length / (elapsedNanos / 1e9);
+    }
+
+    private String dumpWeather() {
+        Cursor cursor = mDb.query(WeatherContract.WeatherEntry.TABLE_NAME, null, null, null,
+                null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        int idIndex = cursor.getColumnIndex(WeatherContract.WeatherEntry._ID);
+        StringBuilder dump = new StringBuilder();
+        while (cursor.moveToNext()) {
+            for (int i = 0; i < cursor.getColumnCount(); i++) {
+                if (i != idIndex) {
+                    dump.append(cursor.getString(i)).append(',');
+                }
+            }
+            dump.append('\n');
+        }
+        cursor.close();
+        return dump.toString();
+    }
+
+    public void testStatementMatchesContentValues() {
+        ContentValues[] rows = createRows(14);
+        // an incomplete row must still be inserted, through the fallback
+        rows[5].put(WeatherContract.WeatherEntry.COLUMN_DEGREES, "270");
+        rows[6].remove(WeatherContract.WeatherEntry.COLUMN_HUMIDITY);
+
+        mDb.beginTransaction();
+        try {
+            // the row without humidity violates NOT NULL either way
+            assertEquals(rows.length - 1, WeatherProvider.insertWeatherWithContentValues(mDb, rows));
+            String expected = dumpWeather();
+
+            mDb.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+            assertEquals(rows.length - 1, WeatherProvider.insertWeatherWithStatement(mDb, rows));
+            assertEquals(expected, dumpWeather());
+
+            // inserting the same rows again replaces them rather than failing
+            assertEquals(rows.length - 1, WeatherProvider.insertWeatherWithStatement(mDb, rows));
+            assertEquals(expected, dumpWeather());
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    public void testBenchmark() {
+        for (int size : BATCH_SIZES) {
+            ContentValues[] rows = createRows(size);
+
+            double legacy = rowsPerSecond(rows, new Insert() {
+                @Override
+                public int run(SQLiteDatabase db, ContentValues[] rows) {
+                    return WeatherProvider.insertWeatherWithContentValues(db, rows);
+                }
+            });
+            double statement = rowsPerSecond(rows, new Insert() {
+                @Override
+                public int run(SQLiteDatabase db, ContentValues[] rows) {
+                    return WeatherProvider.insertWeatherWithStatement(db, rows);
+                }
+            });
+
+            Log.i(LOG_TAG, String.format(Locale.US,
+                    "%6d rows: ContentValues %9.0f rows/s, SQLiteStatement %9.0f rows/s (%.2fx)",
+                    size, legacy, statement, statement / legacy));
+        }
+    }
+}
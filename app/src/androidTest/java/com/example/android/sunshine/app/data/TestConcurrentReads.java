@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Build;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Checks that the weather database runs in WAL mode, and that queries through the provider
+    aren't held up by a large bulkInsert running on another thread.
+ */
+public class TestConcurrentReads extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestConcurrentReads.class.getSimpleName();
+
+    private static final int BULK_INSERT_ROWS = 20000;
+    // No single query may take longer than this while the bulkInsert is running.
+    private static final long MAX_READ_LATENCY_MILLIS = 500;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testJournalModeIsWal() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        Cursor c = db.rawQuery("PRAGMA journal_mode", null);
+        assertTrue(c.moveToFirst());
+        assertEquals("wal", c.getString(0).toLowerCase());
+        c.close();
+        dbHelper.close();
+    }
+
+    public void testReadsDoNotWaitForBulkInsert() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // no write-ahead logging before Honeycomb
+            return;
+        }
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        // something for the readers to find
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createWeatherValues(locationRowId));
+
+        final ContentValues[] rows = new ContentValues[BULK_INSERT_ROWS];
+        long date = TestUtilities.TEST_DATE;
+        for (int i = 0; i < rows.length; i++) {
+            date += 1000 * 60 * 60 * 24;
+            rows[i] = TestUtilities.createWeatherValues(locationRowId);
+            rows[i].put(WeatherEntry.COLUMN_DATE, date);
+        }
+
+        final AtomicInteger inserted = new AtomicInteger(-1);
+        Thread writer = new Thread("bulkInsert") {
+            @Override
+            public void run() {
+                inserted.set(mContext.getContentResolver().bulkInsert(
+                        WeatherEntry.CONTENT_URI, rows));
+            }
+        };
+
+        // The provider's snapshot cache only drops this location once the bulkInsert commits,
+        // so a repeated read would be served from memory and never meet the open transaction.
+        // The sort order is part of the cache key, so each read asks for a different LIMIT
+        // instead, which misses the cache and still finds the committed row.
+        Uri readUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        ForecastSnapshotCache cache =
+                ((WeatherProvider) client.getLocalContentProvider()).getSnapshotCache();
+        long hitsBefore = cache.getHitCount();
+        long maxLatencyNanos = 0;
+        int reads = 0;
+
+        try {
+            writer.start();
+            while (writer.isAlive()) {
+                long start = System.nanoTime();
+                Cursor cursor = mContext.getContentResolver().query(readUri, null, null, null,
+                        WeatherEntry.COLUMN_DATE + " ASC LIMIT " + (14 + reads));
+                assertTrue("Error: a reader couldn't see the committed weather",
+                        cursor.moveToFirst());
+                cursor.close();
+                maxLatencyNanos = Math.max(maxLatencyNanos, System.nanoTime() - start);
+                reads++;
+            }
+            writer.join();
+            assertEquals("Error: a read was served by the snapshot cache instead of SQLite",
+                    hitsBefore, cache.getHitCount());
+        } finally {
+            client.release();
+        }
+
+        assertEquals(BULK_INSERT_ROWS, inserted.get());
+        long maxLatencyMillis = maxLatencyNanos / 1000000;
+        Log.i(LOG_TAG, reads + " reads during a " + BULK_INSERT_ROWS
+                + " row bulkInsert, slowest " + maxLatencyMillis + " ms");
+        assertTrue("Error: a read waited " + maxLatencyMillis + " ms for the bulkInsert",
+                maxLatencyMillis <= MAX_READ_LATENCY_MILLIS);
+    }
+}
@@ -16,6 +16,7 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ContentValues;
+import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
@@ -234,4 +235,134 @@ public class TestDb extends AndroidTestCase {
         db.close();
         return locationRowId;
     }
+
+    // The weather rows written into each historic database before it is upgraded.
+    private static final int UPGRADE_TEST_ROWS = 1000;
+    // Opening an upgraded database with that many rows must not take longer than this.
+    private static final long UPGRADE_BUDGET_MILLIS = 2000;
+
+    /*
+        The schema as it was shipped at each DATABASE_VERSION that MIGRATIONS can upgrade.  These
+        are snapshots: never change one, add a new case for a new version instead.
+     */
+    static void createHistoricSchema(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 2:
+                db.execSQL("CREATE TABLE location (" +
+                        "_id INTEGER PRIMARY KEY," +
+                        "location_setting TEXT UNIQUE NOT NULL, " +
+                        "city_name TEXT NOT NULL, " +
+                        "coord_lat REAL NOT NULL, " +
+                        "coord_long REAL NOT NULL " +
+                        " );");
+                db.execSQL("CREATE TABLE weather (" +
+                        "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "location_id INTEGER NOT NULL, " +
+                        "date INTEGER NOT NULL, " +
+                        "short_desc TEXT NOT NULL, " +
+                        "weather_id INTEGER NOT NULL," +
+                        "min REAL NOT NULL, " +
+                        "max REAL NOT NULL, " +
+                        "humidity REAL NOT NULL, " +
+                        "pressure REAL NOT NULL, " +
+                        "wind REAL NOT NULL, " +
+                        "degrees REAL NOT NULL, " +
+                        " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                        " UNIQUE (date, location_id) ON CONFLICT REPLACE);");
+                break;
+            default:
+                fail("Error: no historic schema for version " + version);
+        }
+    }
+
+    /*
+        Builds a database as it looked at the given version, with a location and
+        UPGRADE_TEST_ROWS days of weather in it.  The schema itself is taken from the oldest
+        migratable version when the version is older than that.
+     */
+    private void createHistoricDatabase(int version) {
+        SQLiteDatabase db = mContext.openOrCreateDatabase(WeatherDbHelper.DATABASE_NAME,
+                Context.MODE_PRIVATE, null);
+        createHistoricSchema(db, Math.max(version, WeatherDbHelper.OLDEST_MIGRATABLE_VERSION));
+
+        long locationRowId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        assertTrue(locationRowId != -1);
+
+        db.beginTransaction();
+        try {
+            long date = TestUtilities.TEST_DATE;
+            for (int i = 0; i < UPGRADE_TEST_ROWS; i++, date += 1000 * 60 * 60 * 24) {
+                ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                        WeatherContract.normalizeDate(date));
+                assertTrue(db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null,
+                        weatherValues) != -1);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.setVersion(version);
+        db.close();
+    }
+
+    private static long count(SQLiteDatabase db, String table) {
+        Cursor c = db.rawQuery("SELECT COUNT(*) FROM " + table, null);
+        c.moveToFirst();
+        long count = c.getLong(0);
+        c.close();
+        return count;
+    }
+
+    private static boolean hasIndex(SQLiteDatabase db, String index) {
+        Cursor c = db.rawQuery("SELECT name FROM sqlite_master WHERE type='index' AND name=?",
+                new String[]{index});
+        boolean found = c.moveToFirst();
+        c.close();
+        return found;
+    }
+
+    public void testMigrationsCoverEveryVersion() {
+        assertEquals("Error: every version after OLDEST_MIGRATABLE_VERSION needs a migration",
+                WeatherDbHelper.DATABASE_VERSION - WeatherDbHelper.OLDEST_MIGRATABLE_VERSION,
+                WeatherDbHelper.MIGRATIONS.length);
+    }
+
+    public void testUpgradeKeepsData() {
+        for (int version = WeatherDbHelper.OLDEST_MIGRATABLE_VERSION;
+             version < WeatherDbHelper.DATABASE_VERSION; version++) {
+            deleteTheDatabase();
+            createHistoricDatabase(version);
+
+            long start = System.nanoTime();
+            WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+            assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+            assertEquals("Error: locations were lost upgrading from version " + version,
+                    1, count(db, WeatherContract.LocationEntry.TABLE_NAME));
+            assertEquals("Error: weather was lost upgrading from version " + version,
+                    UPGRADE_TEST_ROWS, count(db, WeatherContract.WeatherEntry.TABLE_NAME));
+            assertTrue("Error: upgrading from version " + version + " didn't add the index",
+                    hasIndex(db, WeatherDbHelper.WEATHER_LOCATION_DATE_INDEX));
+            assertTrue("Error: upgrading from version " + version + " took " + elapsedMillis
+                    + " ms", elapsedMillis <= UPGRADE_BUDGET_MILLIS);
+            dbHelper.close();
+        }
+    }
+
+    // Versions older than any migration are rebuilt.  That drops their data, which is the
+    // documented policy for them.
+    public void testUpgradeFromUnmigratableVersionRebuilds() {
+        createHistoricDatabase(WeatherDbHelper.OLDEST_MIGRATABLE_VERSION - 1);
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+        assertEquals(0, count(db, WeatherContract.WeatherEntry.TABLE_NAME));
+        assertTrue(hasIndex(db, WeatherDbHelper.WEATHER_LOCATION_DATE_INDEX));
+        dbHelper.close();
+    }
 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Build;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestForecastSnapshotCache extends AndroidTestCase {
+
+    private static final String OTHER_LOCATION = "94043";
+    private static final String DATE_ASC = WeatherEntry.COLUMN_DATE + " ASC";
+
+    private ContentProviderClient mClient;
+    private ForecastSnapshotCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            mClient = mContext.getContentResolver().acquireContentProviderClient(
+                    WeatherContract.CONTENT_AUTHORITY);
+            mCache = ((WeatherProvider) mClient.getLocalContentProvider()).getSnapshotCache();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mClient != null) {
+            mClient.release();
+        }
+        super.tearDown();
+    }
+
+    private long insertLocation(String locationSetting) {
+        ContentValues values = TestUtilities.createNorthPoleLocationValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        Uri uri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values);
+        return ContentUris.parseId(uri);
+    }
+
+    private Cursor queryForecast(String locationSetting) {
+        return mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(locationSetting,
+                        TestUtilities.TEST_DATE),
+                null, null, null, DATE_ASC);
+    }
+
+    private static void assertSameRows(Cursor expected, Cursor actual) {
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getColumnCount(), actual.getColumnCount());
+        expected.moveToPosition(-1);
+        actual.moveToPosition(-1);
+        while (expected.moveToNext()) {
+            assertTrue(actual.moveToNext());
+            for (int i = 0; i < expected.getColumnCount(); i++) {
+                assertEquals("Error: column " + expected.getColumnName(i) + " differs",
+                        expected.getString(i), actual.getString(i));
+                assertEquals(expected.getDouble(i), actual.getDouble(i));
+            }
+        }
+    }
+
+    public void testCachedForecastMatchesDatabase() {
+        if (mCache == null) {
+            return;
+        }
+        long locationRowId = insertLocation(TestUtilities.TEST_LOCATION);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(locationRowId));
+
+        long misses = mCache.getMissCount();
+        long hits = mCache.getHitCount();
+
+        Cursor first = queryForecast(TestUtilities.TEST_LOCATION);
+        Cursor second = queryForecast(TestUtilities.TEST_LOCATION);
+        assertEquals(misses + 1, mCache.getMissCount());
+        assertEquals(hits + 1, mCache.getHitCount());
+
+        // the cached rows must read exactly like the rows SQLite returns
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        Cursor database = WeatherProvider.sWeatherByLocationSettingQueryBuilder.query(
+                dbHelper.getReadableDatabase(), null,
+                WeatherProvider.sLocationSettingWithStartDateSelection,
+                new String[]{TestUtilities.TEST_LOCATION,
+                        Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE))},
+                null, null, DATE_ASC);
+        assertSameRows(database, first);
+        assertSameRows(database, second);
+        database.close();
+        dbHelper.close();
+        first.close();
+        second.close();
+    }
+
+    public void testWritesInvalidateOnlyTheirLocation() {
+        if (mCache == null) {
+            return;
+        }
+        long locationRowId = insertLocation(TestUtilities.TEST_LOCATION);
+        long otherRowId = insertLocation(OTHER_LOCATION);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(locationRowId));
+
+        queryForecast(TestUtilities.TEST_LOCATION).close();
+        queryForecast(OTHER_LOCATION).close();
+
+        // weather for the other location must not drop ours
+        long hits = mCache.getHitCount();
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(otherRowId));
+        queryForecast(TestUtilities.TEST_LOCATION).close();
+        assertEquals(hits + 1, mCache.getHitCount());
+
+        // and the other location must see its new weather, not the empty snapshot
+        Cursor other = queryForecast(OTHER_LOCATION);
+        assertEquals(TestProvider.BULK_INSERT_RECORDS_TO_INSERT, other.getCount());
+        other.close();
+
+        // an upsert that changes our weather drops ours
+        ContentValues[] changed = TestProvider.createBulkInsertWeatherValues(locationRowId);
+        changed[0].put(WeatherEntry.COLUMN_MAX_TEMP, 123.0);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.buildWeatherUpsertUri(), changed);
+        Cursor ours = queryForecast(TestUtilities.TEST_LOCATION);
+        assertTrue(ours.moveToFirst());
+        assertEquals(123.0, ours.getDouble(ours.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP)));
+        ours.close();
+    }
+
+    public void testStaleResultIsNotStored() {
+        ForecastSnapshotCache cache = new ForecastSnapshotCache();
+        ForecastSnapshotCache.Key key = new ForecastSnapshotCache.Key(
+                TestUtilities.TEST_LOCATION, 0, 0, null, null);
+
+        // a load that started before the invalidation must not be cached
+        ForecastSnapshotCache.Ticket ticket = cache.newTicket(TestUtilities.TEST_LOCATION);
+        cache.invalidate(TestUtilities.TEST_LOCATION);
+        cache.put(key, ticket, new MatrixCursor(new String[]{"a"})).close();
+        assertEquals(0, cache.size());
+        assertNull(cache.get(key));
+
+        // one that started after it is
+        ticket = cache.newTicket(TestUtilities.TEST_LOCATION);
+        cache.put(key, ticket, new MatrixCursor(new String[]{"a"})).close();
+        assertEquals(1, cache.size());
+        Cursor cursor = cache.get(key);
+        assertNotNull(cursor);
+        cursor.close();
+    }
+}
@@ -16,19 +16,28 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
@@ -422,7 +431,7 @@ public class TestProvider extends AndroidTestCase {
     }
 
 
-    static private final int BULK_INSERT_RECORDS_TO_INSERT = 10;
+    static final int BULK_INSERT_RECORDS_TO_INSERT = 10;
     static ContentValues[] createBulkInsertWeatherValues(long locationRowId) {
         long currentTestDate = TestUtilities.TEST_DATE;
         long millisecondsInADay = 1000*60*60*24;
@@ -512,4 +521,171 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    // Upserting the same rows twice must leave them alone, and upserting one changed day must
+    // update only that day, in place, and notify only that day's uri.
+    public void testBulkUpsert() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        assertTrue(locationRowId != -1);
+
+        Uri upsertUri = WeatherEntry.buildWeatherUpsertUri();
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(locationRowId);
+        assertEquals("Error: every row should be new on the first upsert",
+                BULK_INSERT_RECORDS_TO_INSERT,
+                mContext.getContentResolver().bulkInsert(upsertUri, weatherValues));
+
+        long[] idsBefore = queryWeatherIds();
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, idsBefore.length);
+
+        weatherValues = createBulkInsertWeatherValues(locationRowId);
+        assertEquals("Error: identical rows should not be rewritten",
+                0, mContext.getContentResolver().bulkInsert(upsertUri, weatherValues));
+
+        // change the high of a single day
+        final int changedDay = 3;
+        weatherValues = createBulkInsertWeatherValues(locationRowId);
+        weatherValues[changedDay].put(WeatherEntry.COLUMN_MAX_TEMP, 99.5);
+        long changedDate = WeatherContract.normalizeDate(
+                weatherValues[changedDay].getAsLong(WeatherEntry.COLUMN_DATE));
+
+        TestUtilities.TestContentObserver dayObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, changedDate),
+                false, dayObserver);
+
+        assertEquals("Error: exactly one row should have changed",
+                1, mContext.getContentResolver().bulkInsert(upsertUri, weatherValues));
+
+        dayObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(dayObserver);
+
+        assertTrue("Error: updated rows should keep their _id",
+                Arrays.equals(idsBefore, queryWeatherIds()));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        cursor.moveToFirst();
+        for ( int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext() ) {
+            TestUtilities.validateCurrentRecord("testBulkUpsert.  Error validating WeatherEntry " + i,
+                    cursor, weatherValues[i]);
+        }
+        cursor.close();
+    }
+
+    // A sync's new location, its weather and the removal of old days go in as one batch, and
+    // observers must hear about it once, after the commit, rather than once per operation.
+    public void testApplyBatchNotifiesOnce() throws Exception {
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(0);
+
+        ArrayList<ContentProviderOperation> ops = new ArrayList<ContentProviderOperation>();
+        ops.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(locationValues)
+                .build());
+        for (ContentValues values : weatherValues) {
+            ops.add(ContentProviderOperation.newUpdate(WeatherEntry.buildWeatherUpsertUri())
+                    .withValues(values)
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .build());
+        }
+        ops.add(ContentProviderOperation.newDelete(WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherEntry.COLUMN_DATE + " < ?",
+                        new String[]{Long.toString(TestUtilities.TEST_DATE)})
+                .build());
+
+        CountingObserver observer = new CountingObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherContract.BASE_CONTENT_URI, true, observer);
+
+        ContentProviderResult[] results = mContext.getContentResolver().applyBatch(
+                WeatherContract.CONTENT_AUTHORITY, ops);
+
+        // Notifications reach an observer in the order they were sent, so once this one is in
+        // every notification from the batch has been counted.
+        mContext.getContentResolver().notifyChange(WeatherContract.BASE_CONTENT_URI, null);
+        observer.waitForChanges(2);
+        mContext.getContentResolver().unregisterContentObserver(observer);
+
+        assertEquals("Error: the batch should have notified exactly once", 2, observer.mChanges);
+
+        long locationRowId = ContentUris.parseId(results[0].uri);
+        for (int i = 1; i <= BULK_INSERT_RECORDS_TO_INSERT; i++) {
+            assertEquals("Error: every upserted day should be new",
+                    Integer.valueOf(1), results[i].count);
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals("Error: the batch should have written every day",
+                BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        for ( int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext() ) {
+            weatherValues[i].put(WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+            TestUtilities.validateCurrentRecord("testApplyBatchNotifiesOnce.  Error validating WeatherEntry " + i,
+                    cursor, weatherValues[i]);
+        }
+        cursor.close();
+    }
+
+    static class CountingObserver extends ContentObserver {
+        final HandlerThread mHT;
+        volatile int mChanges;
+
+        CountingObserver() {
+            this(new HandlerThread("CountingObserverThread"));
+        }
+
+        private CountingObserver(HandlerThread ht) {
+            super(startHandler(ht));
+            mHT = ht;
+        }
+
+        private static Handler startHandler(HandlerThread ht) {
+            ht.start();
+            return new Handler(ht.getLooper());
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            mChanges++;
+        }
+
+        void waitForChanges(final int changes) {
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    return mChanges >= changes;
+                }
+            }.run();
+            mHT.quit();
+        }
+    }
+
+    private long[] queryWeatherIds() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        long[] ids = new long[cursor.getCount()];
+        for ( int i = 0; cursor.moveToNext(); i++ ) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return ids;
+    }
 }
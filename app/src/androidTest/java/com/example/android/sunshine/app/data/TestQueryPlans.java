@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.HashSet;
+
+/*
+    Runs EXPLAIN QUERY PLAN over the queries behind every WeatherProvider route, with the
+    selections the app actually sends, and fails if any of them reads a whole table.
+ */
+public class TestQueryPlans extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestQueryPlans.class.getSimpleName();
+
+    private static final String DATE_ASC = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+    private SQLiteDatabase mDb;
+    private final HashSet<Integer> mCheckedRoutes = new HashSet<Integer>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDb = new WeatherDbHelper(mContext).getWritableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    /*
+        Fails if SQLite plans a full scan of any table for sql.  Searches (through an index or
+        the rowid) are fine, and so is a temporary b-tree for the ORDER BY.
+     */
+    private void assertNoTableScan(int route, String sql, String[] args) {
+        mCheckedRoutes.add(route);
+        Cursor plan = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        int detailIndex = plan.getColumnIndexOrThrow("detail");
+        StringBuilder planText = new StringBuilder();
+        boolean scans = false;
+        while (plan.moveToNext()) {
+            String detail = plan.getString(detailIndex);
+            planText.append(detail).append('\n');
+            if (detail.startsWith("SCAN")) {
+                scans = true;
+            }
+        }
+        plan.close();
+        Log.d(LOG_TAG, sql + "\n" + planText);
+        assertFalse("Error: full table scan for route " + route + ":\n" + sql + "\n" + planText,
+                scans);
+    }
+
+    private void assertJoinPlan(int route, String selection, String[] args) {
+        String sql = WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(
+                null, selection, null, null, DATE_ASC, null);
+        assertNoTableScan(route, sql, args);
+    }
+
+    private void assertTablePlan(int route, String table, String selection, String[] args) {
+        String sql = "SELECT * FROM " + table + " WHERE " + selection;
+        assertNoTableScan(route, sql, args);
+    }
+
+    public void testEveryRouteUsesAnIndex() {
+        String location = TestUtilities.TEST_LOCATION;
+        String date = Long.toString(TestUtilities.TEST_DATE);
+
+        // weather/*, as loaded by the forecast list, the widgets and Muzei
+        assertJoinPlan(WeatherProvider.WEATHER_WITH_LOCATION,
+                WeatherProvider.sLocationSettingSelection, new String[]{location});
+        assertJoinPlan(WeatherProvider.WEATHER_WITH_LOCATION,
+                WeatherProvider.sLocationSettingWithStartDateSelection,
+                new String[]{location, date});
+
+        // weather/*/#, as loaded by the detail screen
+        assertJoinPlan(WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE,
+                WeatherProvider.sLocationSettingAndDaySelection, new String[]{location, date});
+
+        // weather, as used by the sync adapter to drop old days and by the upsert
+        assertTablePlan(WeatherProvider.WEATHER, WeatherContract.WeatherEntry.TABLE_NAME,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?", new String[]{date});
+        assertTablePlan(WeatherProvider.WEATHER, WeatherContract.WeatherEntry.TABLE_NAME,
+                WeatherProvider.sLocationIdAndDateRangeSelection,
+                new String[]{"1", date, date});
+
+        // location, as used by the sync adapter to look up a location
+        assertTablePlan(WeatherProvider.LOCATION, WeatherContract.LocationEntry.TABLE_NAME,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{location});
+        assertTablePlan(WeatherProvider.LOCATION, WeatherContract.LocationEntry.TABLE_NAME,
+                WeatherContract.LocationEntry._ID + " = ?", new String[]{"1"});
+
+        // and make sure no route was forgotten
+        UriMatcher matcher = WeatherProvider.buildUriMatcher();
+        Uri[] routeUris = {
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.buildWeatherLocation(location),
+                WeatherContract.WeatherEntry.buildWeatherLocationWithDate(location,
+                        TestUtilities.TEST_DATE),
+                WeatherContract.LocationEntry.CONTENT_URI
+        };
+        for (Uri uri : routeUris) {
+            int route = matcher.match(uri);
+            assertTrue("Error: no query plan checked for " + uri,
+                    mCheckedRoutes.contains(route));
+        }
+    }
+}
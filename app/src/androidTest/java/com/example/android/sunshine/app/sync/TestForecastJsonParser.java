@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/*
+    Checks that the streaming forecast parser produces exactly what the JSONObject parser did,
+    and benchmarks the two against each other.  The benchmark results are written to logcat
+    under the LOG_TAG of this class.
+ */
+public class TestForecastJsonParser extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastJsonParser.class.getSimpleName();
+
+    private static final int[] FIXTURE_DAYS = {14, 16, 365};
+    private static final int WARM_UP_RUNS = 3;
+    private static final int TIMED_RUNS = 10;
+
+    /*
+        Builds a response shaped like the OWM daily forecast, including the fields we skip.
+     */
+    static String createForecastJson(int numDays) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},")
+                .append("\"country\":\"US\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0.0123,\"cnt\":").append(numDays)
+                .append(",\"list\":[");
+        for (int i = 0; i < numDays; i++) {
+            if (i > 0) json.append(',');
+            json.append(String.format(Locale.US,
+                    "{\"dt\":%d,\"temp\":{\"day\":%.2f,\"min\":%.2f,\"max\":%.2f," +
+                            "\"night\":%.2f,\"eve\":%.2f,\"morn\":%.2f}," +
+                            "\"pressure\":%.2f,\"humidity\":%d," +
+                            "\"weather\":[{\"id\":%d,\"main\":\"Clear\"," +
+                            "\"description\":\"sky is clear\",\"icon\":\"01d\"}]," +
+                            "\"speed\":%.2f,\"deg\":%d,\"clouds\":%d}",
+                    1419120000L + i * 86400L, 20.5 + i % 7, 10.25 - i % 5, 25.75 + i % 3,
+                    12.0, 18.0, 11.0, 1012.5 + i % 11, 40 + i % 50,
+                    800 + i % 5, 1.5 + (i % 9) / 10.0, (i * 37) % 360, i % 100));
+            json.append('\n');
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    static class CountingCallback implements ForecastJsonParser.Callback {
+        String cityName;
+        double lat;
+        double lon;
+        final ArrayList<ContentValues> days = new ArrayList<ContentValues>();
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            this.cityName = cityName;
+            this.lat = lat;
+            this.lon = lon;
+        }
+
+        @Override
+        public void onDay(int dayIndex, ContentValues weatherValues) {
+            assertEquals("Error: days were not delivered in order", days.size(), dayIndex);
+            days.add(weatherValues);
+        }
+    }
+
+    private static InputStream toStream(String json) throws IOException {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+
+    /*
+        The original sync path: read the body line by line into a StringBuffer, then build a
+        JSONObject tree from it.
+     */
+    private static int parseLegacy(InputStream in, ForecastJsonParser.Callback callback)
+            throws IOException, JSONException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        StringBuffer buffer = new StringBuffer();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            buffer.append(line + "\n");
+        }
+        reader.close();
+        return ForecastJsonParser.parse(buffer.toString(), callback);
+    }
+
+    public void testStreamingMatchesJsonObject() throws Exception {
+        for (int numDays : FIXTURE_DAYS) {
+            String json = createForecastJson(numDays);
+
+            CountingCallback expected = new CountingCallback();
+            assertEquals(HttpURLConnection.HTTP_OK, parseLegacy(toStream(json), expected));
+
+            CountingCallback actual = new CountingCallback();
+            assertEquals(HttpURLConnection.HTTP_OK,
+                    ForecastJsonParser.parseStream(toStream(json), actual));
+
+            assertEquals(expected.cityName, actual.cityName);
+            assertEquals(expected.lat, actual.lat);
+            assertEquals(expected.lon, actual.lon);
+            assertEquals("Error: wrong number of days for a " + numDays + " day forecast",
+                    numDays, actual.days.size());
+            for (int i = 0; i < numDays; i++) {
+                assertEquals("Error: day " + i + " of " + numDays + " differs",
+                        expected.days.get(i), actual.days.get(i));
+            }
+        }
+    }
+
+    public void testStreamingReportsErrorCode() throws Exception {
+        String json = "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}";
+        CountingCallback callback = new CountingCallback();
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                ForecastJsonParser.parseStream(toStream(json), callback));
+        assertTrue(callback.days.isEmpty());
+    }
+
+    public void testStreamingRejectsMalformedDay() throws Exception {
+        String json = "{\"city\":{\"name\":\"x\",\"coord\":{\"lon\":1,\"lat\":2}}," +
+                "\"list\":[{\"pressure\":\"high\"}]}";
+        try {
+            ForecastJsonParser.parseStream(toStream(json), new CountingCallback());
+            fail("Error: a malformed day should not parse");
+        } catch (IOException e) {
+            assertTrue(ForecastJsonParser.isMalformed(e));
+        }
+    }
+
+    private interface Parse {
+        void run(InputStream in) throws Exception;
+    }
+
+    private void benchmark(String name, int numDays, byte[] body, Parse parse) throws Exception {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            parse.run(new ByteArrayInputStream(body));
+        }
+
+        Runtime.getRuntime().gc();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            parse.run(new ByteArrayInputStream(body));
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%-10s %3d days: %8.3f ms/parse, %8d bytes/parse, %6d objects/parse",
+                name, numDays, elapsedNanos / 1e6 / TIMED_RUNS,
+                Debug.getThreadAllocSize() / TIMED_RUNS,
+                Debug.getThreadAllocCount() / TIMED_RUNS));
+    }
+
+    public void testBenchmark() throws Exception {
+        for (int numDays : FIXTURE_DAYS) {
+            byte[] body = createForecastJson(numDays).getBytes("UTF-8");
+
+            benchmark("JSONObject", numDays, body, new Parse() {
+                @Override
+                public void run(InputStream in) throws Exception {
+                    parseLegacy(in, new CountingCallback());
+                }
+            });
+            benchmark("JsonReader", numDays, body, new Parse() {
+                @Override
+                public void run(InputStream in) throws Exception {
+                    ForecastJsonParser.parseStream(in, new CountingCallback());
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.FakeHttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+    Exercises HttpTransport against a local FakeHttpServer, so no network is needed.
+ */
+public class TestHttpTransport extends AndroidTestCase {
+
+    private FakeHttpServer mServer;
+    private HttpTransport mTransport;
+    private byte[] mForecast;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new FakeHttpServer();
+        mServer.start();
+        mTransport = new HttpTransport();
+        mForecast = TestForecastJsonParser.createForecastJson(14).getBytes("UTF-8");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    public void testGzipIsNegotiatedAndDecoded() throws Exception {
+        FakeHttpServer.Reply reply = FakeHttpServer.Reply.gzip(mForecast);
+        mServer.enqueue(reply);
+
+        HttpTransport.Response response = mTransport.get(mServer.getUrl("/forecast"), null);
+        assertEquals(HttpURLConnection.HTTP_OK, response.getCode());
+        assertTrue("Error: the body wasn't decoded",
+                Arrays.equals(mForecast, readAll(response.getBody())));
+        response.close();
+
+        String acceptEncoding = mServer.takeRequest().headers.get("accept-encoding");
+        assertNotNull("Error: no Accept-Encoding was sent", acceptEncoding);
+        assertTrue(acceptEncoding.contains("gzip"));
+
+        HttpTransport.RequestStats stats = response.getStats();
+        assertEquals("gzip", stats.contentEncoding);
+        assertEquals(reply.body.length, stats.wireBytes);
+        assertEquals(mForecast.length, stats.decodedBytes);
+        assertTrue("Error: the forecast should compress",
+                stats.wireBytes < stats.decodedBytes);
+        assertEquals(stats.wireBytes, mTransport.getWireBytes());
+        assertEquals(stats.decodedBytes, mTransport.getDecodedBytes());
+    }
+
+    public void testIdentityBodyIsCounted() throws Exception {
+        mServer.enqueue(FakeHttpServer.Reply.ok(mForecast));
+
+        HttpTransport.Response response = mTransport.get(mServer.getUrl("/forecast"), null);
+        assertTrue(Arrays.equals(mForecast, readAll(response.getBody())));
+        response.close();
+
+        HttpTransport.RequestStats stats = response.getStats();
+        assertEquals(mForecast.length, stats.wireBytes);
+        assertEquals(mForecast.length, stats.decodedBytes);
+    }
+
+    public void testConnectionIsReused() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mServer.enqueue(FakeHttpServer.Reply.gzip(mForecast));
+        }
+
+        // read the first body fully, leave the second unread, and check both are reusable
+        HttpTransport.Response response = mTransport.get(mServer.getUrl("/1"), null);
+        readAll(response.getBody());
+        response.close();
+
+        response = mTransport.get(mServer.getUrl("/2"), null);
+        response.close();
+
+        response = mTransport.get(mServer.getUrl("/3"), null);
+        readAll(response.getBody());
+        response.close();
+
+        assertEquals(3, mTransport.getRequestCount());
+        assertEquals("Error: the transport didn't keep its connection alive",
+                1, mServer.getConnectionCount());
+    }
+
+    public void testNotModified() throws Exception {
+        mServer.enqueue(FakeHttpServer.Reply.notModified());
+
+        HashMap<String, String> headers = new HashMap<String, String>();
+        headers.put("If-None-Match", "\"v1\"");
+        HttpTransport.Response response = mTransport.get(mServer.getUrl("/forecast"), headers);
+        assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, response.getCode());
+        response.close();
+
+        assertEquals("\"v1\"", mServer.takeRequest().headers.get("if-none-match"));
+        assertEquals(0, response.getStats().wireBytes);
+    }
+}
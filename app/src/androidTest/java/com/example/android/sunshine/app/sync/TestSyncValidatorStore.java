@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+
+public class TestSyncValidatorStore extends AndroidTestCase {
+
+    private static final String TEST_LOCATION = "99705";
+    private static final int TEST_JULIAN_DAY = 2457000;
+
+    private SyncValidatorStore mStore;
+
+    /*
+        Behaves like a network body: once closed, it can't be read any more.
+     */
+    static class ClosableStream extends FilterInputStream {
+        boolean closed;
+
+        ClosableStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkOpen();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            checkOpen();
+            return super.read(buffer, offset, count);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+
+        private void checkOpen() throws IOException {
+            if (closed) {
+                throw new IOException("stream closed");
+            }
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mStore = new SyncValidatorStore(mContext);
+        mStore.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mStore.clear();
+        super.tearDown();
+    }
+
+    public void testValidatorsOnlyApplyToTheSameDay() {
+        assertNull("Error: a fresh store should have no validators",
+                mStore.get(TEST_LOCATION, TEST_JULIAN_DAY));
+
+        String digest = SyncValidatorStore.digest("{}".getBytes(), 2);
+        mStore.put(TEST_LOCATION, new SyncValidatorStore.Validators(
+                "\"abc\"", "Wed, 21 Oct 2015 07:28:00 GMT", digest, TEST_JULIAN_DAY));
+
+        SyncValidatorStore.Validators validators = mStore.get(TEST_LOCATION, TEST_JULIAN_DAY);
+        assertNotNull(validators);
+        assertEquals("\"abc\"", validators.eTag);
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", validators.lastModified);
+        assertEquals(digest, validators.bodyDigest);
+
+        assertNull("Error: validators from yesterday must not be used today",
+                mStore.get(TEST_LOCATION, TEST_JULIAN_DAY + 1));
+        assertNull("Error: validators are per location",
+                mStore.get("94043", TEST_JULIAN_DAY));
+    }
+
+    public void testDigestDependsOnlyOnContent() {
+        byte[] body = "{\"cod\":\"200\"}".getBytes();
+        byte[] padded = "{\"cod\":\"200\"}   ".getBytes();
+        assertEquals(SyncValidatorStore.digest(body, body.length),
+                SyncValidatorStore.digest(padded, body.length));
+        assertFalse(SyncValidatorStore.digest(body, body.length)
+                .equals(SyncValidatorStore.digest(padded, padded.length)));
+    }
+
+    public void testStreamedDigestMatchesBufferedDigest() throws Exception {
+        // Trailing whitespace the parser never reads still counts, as it did when the whole
+        // body was buffered.
+        byte[] body = (TestForecastJsonParser.createForecastJson(16) + "\n\n").getBytes("UTF-8");
+        DigestInputStream in =
+                SyncValidatorStore.newDigestStream(new ByteArrayInputStream(body));
+        assertNotNull("Error: no digest algorithm", in);
+        TestForecastJsonParser.CountingCallback callback =
+                new TestForecastJsonParser.CountingCallback();
+        ForecastJsonParser.parse(in, callback);
+        assertEquals("Error: the body wasn't parsed through the digest stream",
+                16, callback.days.size());
+        assertEquals("Error: the streamed digest differs from the buffered one",
+                SyncValidatorStore.digest(body, body.length),
+                SyncValidatorStore.finishDigest(in));
+    }
+
+    public void testParseLeavesTheBodyOpenForTheDigest() throws Exception {
+        byte[] body = (TestForecastJsonParser.createForecastJson(16) + "\n\n").getBytes("UTF-8");
+        ClosableStream network = new ClosableStream(new ByteArrayInputStream(body));
+        DigestInputStream in = SyncValidatorStore.newDigestStream(network);
+        assertNotNull("Error: no digest algorithm", in);
+        ForecastJsonParser.parse(in, new TestForecastJsonParser.CountingCallback());
+        assertFalse("Error: the parser closed a stream it doesn't own", network.closed);
+        assertEquals("Error: the digest couldn't read the rest of the body",
+                SyncValidatorStore.digest(body, body.length),
+                SyncValidatorStore.finishDigest(in));
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.utils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/*
+    A tiny HTTP/1.1 server on the loopback interface for testing the sync transport offline.
+    Replies are served in the order they were enqueued, and connections are kept alive so that
+    tests can check whether the client reuses them.
+ */
+public class FakeHttpServer {
+
+    private static final String CHARSET = "ISO-8859-1";
+    private static final long TAKE_TIMEOUT_SECONDS = 5;
+
+    public static class Reply {
+        final int code;
+        final Map<String, String> headers = new LinkedHashMap<String, String>();
+        final byte[] body;
+
+        public Reply(int code, byte[] body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        public Reply withHeader(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        public static Reply ok(byte[] body) {
+            return new Reply(200, body);
+        }
+
+        public static Reply gzip(byte[] body) throws IOException {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream out = new GZIPOutputStream(compressed);
+            out.write(body);
+            out.close();
+            return new Reply(200, compressed.toByteArray()).withHeader("Content-Encoding", "gzip");
+        }
+
+        public static Reply notModified() {
+            return new Reply(304, null);
+        }
+    }
+
+    public static class RecordedRequest {
+        public final String requestLine;
+        // header names are lower case
+        public final Map<String, String> headers;
+
+        RecordedRequest(String requestLine, Map<String, String> headers) {
+            this.requestLine = requestLine;
+            this.headers = headers;
+        }
+    }
+
+    private final BlockingQueue<Reply> mReplies = new LinkedBlockingQueue<Reply>();
+    private final BlockingQueue<RecordedRequest> mRequests =
+            new LinkedBlockingQueue<RecordedRequest>();
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
+    private ServerSocket mServerSocket;
+
+    public void start() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptThread = new Thread("FakeHttpServer") {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = mServerSocket.accept();
+                        mConnectionCount.incrementAndGet();
+                        new Thread("FakeHttpServer connection") {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        }.start();
+                    }
+                } catch (IOException e) {
+                    // shut down
+                }
+            }
+        };
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public void shutdown() throws IOException {
+        if (mServerSocket != null) {
+            mServerSocket.close();
+        }
+    }
+
+    public URL getUrl(String path) throws IOException {
+        return new URL("http", "127.0.0.1", mServerSocket.getLocalPort(), path);
+    }
+
+    public void enqueue(Reply reply) {
+        mReplies.add(reply);
+    }
+
+    /*
+        Returns the next request the server received, waiting a few seconds for it if need be.
+     */
+    public RecordedRequest takeRequest() throws InterruptedException {
+        return mRequests.poll(TAKE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /*
+        The number of TCP connections accepted so far.
+     */
+    public int getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    private void serve(Socket socket) {
+        try {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), CHARSET));
+            OutputStream out = socket.getOutputStream();
+            String requestLine;
+            while ((requestLine = in.readLine()) != null) {
+                if (requestLine.length() == 0) {
+                    continue;
+                }
+                HashMap<String, String> headers = new HashMap<String, String>();
+                String line;
+                while ((line = in.readLine()) != null && line.length() > 0) {
+                    int colon = line.indexOf(':');
+                    headers.put(line.substring(0, colon).trim().toLowerCase(),
+                            line.substring(colon + 1).trim());
+                }
+                mRequests.add(new RecordedRequest(requestLine, headers));
+
+                Reply reply = mReplies.poll();
+                if (reply == null) {
+                    reply = new Reply(404, new byte[0]);
+                }
+                writeReply(out, reply);
+            }
+        } catch (IOException e) {
+            // the client went away
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    private static void writeReply(OutputStream out, Reply reply) throws IOException {
+        StringBuilder head = new StringBuilder();
+        head.append("HTTP/1.1 ").append(reply.code).append(" Fake\r\n");
+        for (Map.Entry<String, String> header : reply.headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        if (reply.body != null) {
+            head.append("Content-Length: ").append(reply.body.length).append("\r\n");
+        }
+        head.append("\r\n");
+        out.write(head.toString().getBytes(CHARSET));
+        if (reply.body != null) {
+            out.write(reply.body);
+        }
+        out.flush();
+    }
+}
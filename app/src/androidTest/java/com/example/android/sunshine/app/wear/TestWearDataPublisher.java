@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.shared.WeatherPayload;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class TestWearDataPublisher extends AndroidTestCase {
+
+    /*
+        Records what would have been sent to the watch, by julian day.
+     */
+    static class RecordingSink implements WearDataPublisher.Sink {
+        final Map<Integer, byte[]> sent = new TreeMap<Integer, byte[]>();
+        final List<Integer> deleted = new ArrayList<Integer>();
+        int puts;
+        boolean succeed = true;
+
+        @Override
+        public boolean putDay(int julianDay, byte[] data) {
+            if (succeed) {
+                sent.put(julianDay, data);
+                puts++;
+            }
+            return succeed;
+        }
+
+        @Override
+        public boolean deleteDay(int julianDay) {
+            if (succeed) {
+                deleted.add(julianDay);
+            }
+            return succeed;
+        }
+    }
+
+    private RecordingSink mSink;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clearPrefs();
+        mSink = new RecordingSink();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        clearPrefs();
+        super.tearDown();
+    }
+
+    private void clearPrefs() {
+        mContext.getSharedPreferences("wear_publisher", Context.MODE_PRIVATE)
+                .edit().clear().commit();
+    }
+
+    public void testSendsEachDayAsItsOwnItem() throws IOException {
+        WearDataPublisher publisher = new WearDataPublisher(mContext, 0);
+        WeatherPayload week = TestWeatherPayload.createWeek(true);
+        publisher.offer(week);
+        assertTrue(publisher.flush(mSink));
+
+        assertEquals(7, mSink.sent.size());
+        for (int i = 0; i < 7; i++) {
+            int julianDay = TestWeatherPayload.TEST_JULIAN_DAY + i;
+            WeatherPayload day = WeatherPayload.decode(mSink.sent.get(julianDay));
+            assertEquals("Error: each item should hold just its own day",
+                    1, day.getDays().size());
+            assertEquals(julianDay, day.startJulianDay);
+            assertEquals(week.getDay(julianDay), day.getDay(julianDay));
+        }
+        assertEquals(1, publisher.getPublishedCount());
+        assertEquals(7, publisher.getDaysPublishedCount());
+    }
+
+    public void testCoalescesChangesWithinAWindow() {
+        WearDataPublisher publisher = new WearDataPublisher(mContext, 0);
+        WeatherPayload metric = TestWeatherPayload.createWeek(true);
+        WeatherPayload imperial = TestWeatherPayload.createWeek(false);
+
+        assertTrue("Error: the first change should start a window", publisher.offer(metric));
+        assertFalse("Error: a second change should join the open window",
+                publisher.offer(imperial));
+        assertTrue(publisher.flush(mSink));
+
+        assertEquals(7, mSink.puts);
+        assertEquals(1, publisher.getCoalescedCount());
+        assertFalse(publisher.hasPending());
+    }
+
+    public void testOnlySendsChangedDays() throws IOException {
+        WearDataPublisher publisher = new WearDataPublisher(mContext, 0);
+        WeatherPayload week = TestWeatherPayload.createWeek(true);
+        publisher.offer(week);
+        publisher.flush(mSink);
+
+        // The same weather from a later sync, except for the day after tomorrow.
+        List<WeatherPayload.Day> days = new ArrayList<WeatherPayload.Day>(week.getDays());
+        days.set(2, new WeatherPayload.Day(500, 10, 5));
+        WeatherPayload later = new WeatherPayload(week.metric,
+                week.timestampMillis + 3600 * 1000, week.startJulianDay, days);
+        assertTrue(publisher.offer(later));
+        assertTrue(publisher.flush(mSink));
+        assertEquals("Error: only the changed day should be sent again", 8, mSink.puts);
+        assertEquals(500, WeatherPayload.decode(
+                mSink.sent.get(TestWeatherPayload.TEST_JULIAN_DAY + 2))
+                .getDay(TestWeatherPayload.TEST_JULIAN_DAY + 2).weatherId);
+    }
+
+    public void testSuppressesUnchangedForecasts() {
+        WearDataPublisher publisher = new WearDataPublisher(mContext, 0);
+        WeatherPayload payload = TestWeatherPayload.createWeek(true);
+        publisher.offer(payload);
+        publisher.flush(mSink);
+
+        WeatherPayload later = new WeatherPayload(payload.metric,
+                payload.timestampMillis + 3600 * 1000, payload.startJulianDay, payload.getDays());
+        assertFalse("Error: an unchanged forecast should not start a window",
+                publisher.offer(later));
+
+        // The digests are persisted, so a new publisher knows what the watch has.
+        WearDataPublisher restarted = new WearDataPublisher(mContext, 0);
+        assertFalse(restarted.offer(payload));
+        assertEquals(7, mSink.puts);
+        assertEquals(2, restarted.getSuppressedCount());
+
+        restarted.forget();
+        assertTrue(restarted.offer(payload));
+        assertTrue(restarted.flush(mSink));
+        assertEquals(14, mSink.puts);
+    }
+
+    public void testDeletesPastDays() {
+        WearDataPublisher publisher = new WearDataPublisher(mContext, 0);
+        WeatherPayload week = TestWeatherPayload.createWeek(true);
+        publisher.offer(week);
+        publisher.flush(mSink);
+
+        // A day later: the first day has passed and the rest have moved along by one.
+        List<WeatherPayload.Day> days = new ArrayList<WeatherPayload.Day>(
+                week.getDays().subList(1, 7));
+        days.add(new WeatherPayload.Day(800, 20, 10));
+        publisher.offer(new WeatherPayload(week.metric, week.timestampMillis,
+                week.startJulianDay + 1, days));
+        publisher.flush(mSink);
+
+        assertEquals("Error: only the new last day should be sent", 8, mSink.puts);
+        assertEquals(1, mSink.deleted.size());
+        assertEquals(TestWeatherPayload.TEST_JULIAN_DAY, (int) mSink.deleted.get(0));
+    }
+
+    public void testRemembersLegacyItemDeletion() {
+        assertFalse(new WearDataPublisher(mContext, 0).isLegacyItemDeleted());
+        new WearDataPublisher(mContext, 0).setLegacyItemDeleted();
+        assertTrue("Error: the legacy item would be deleted again by the next service",
+                new WearDataPublisher(mContext, 0).isLegacyItemDeleted());
+    }
+
+    public void testRetriesAfterAFailedSend() {
+        WearDataPublisher publisher = new WearDataPublisher(mContext, 0);
+        WeatherPayload payload = TestWeatherPayload.createWeek(true);
+
+        mSink.succeed = false;
+        publisher.offer(payload);
+        assertFalse(publisher.flush(mSink));
+        assertEquals(0, publisher.getPublishedCount());
+        assertTrue("Error: a forecast that failed to send should stay pending for a retry",
+                publisher.hasPending());
+
+        mSink.succeed = true;
+        assertTrue(publisher.flush(mSink));
+        assertFalse(publisher.hasPending());
+        assertEquals(1, publisher.getPublishedCount());
+        assertEquals(7, mSink.puts);
+    }
+
+    public void testNewerForecastReplacesFailedOne() throws IOException {
+        WearDataPublisher publisher = new WearDataPublisher(mContext, 0);
+        WeatherPayload payload = TestWeatherPayload.createWeek(true);
+
+        mSink.succeed = false;
+        publisher.offer(payload);
+        publisher.flush(mSink);
+        WeatherPayload newer = TestWeatherPayload.createWeek(false);
+        assertFalse("Error: a newer forecast should be folded into the pending retry",
+                publisher.offer(newer));
+
+        mSink.succeed = true;
+        assertTrue(publisher.flush(mSink));
+        assertFalse("Error: the failed forecast was sent instead of the newer one",
+                WeatherPayload.decode(mSink.sent.get(newer.startJulianDay)).metric);
+    }
+
+    public void testDiscardedForecastIsSentWithTheNextOne() {
+        WearDataPublisher publisher = new WearDataPublisher(mContext, 0);
+        WeatherPayload payload = TestWeatherPayload.createWeek(true);
+
+        mSink.succeed = false;
+        publisher.offer(payload);
+        publisher.flush(mSink);
+        publisher.discardPending();
+        assertFalse(publisher.hasPending());
+
+        mSink.succeed = true;
+        assertTrue("Error: days the watch never got should be sent with the same forecast",
+                publisher.offer(payload));
+        assertTrue(publisher.flush(mSink));
+        assertEquals(7, mSink.puts);
+    }
+}
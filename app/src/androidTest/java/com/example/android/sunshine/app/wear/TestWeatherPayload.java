@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.shared.WeatherPayload;
+import com.google.android.gms.wearable.DataMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Checks the phone to watch payload codec.  The watch face decodes with the same shared
+    WeatherPayload, but an installed watch face may be older than the phone app, so anything that
+    changes the bytes written here breaks watches that haven't updated yet.
+ */
+public class TestWeatherPayload extends AndroidTestCase {
+
+    // 1419120000 seconds since the epoch, and the julian day it falls on.
+    static final long TEST_TIMESTAMP = 1419120000000L;
+    static final int TEST_JULIAN_DAY = 2457013;
+
+    static WeatherPayload createWeek(boolean metric) {
+        List<WeatherPayload.Day> days = new ArrayList<WeatherPayload.Day>();
+        for (int i = 0; i < 7; i++) {
+            days.add(new WeatherPayload.Day(800 + i % 5, 25.75 + i, -3.25 - i));
+        }
+        return new WeatherPayload(metric, TEST_TIMESTAMP, TEST_JULIAN_DAY, days);
+    }
+
+    public void testRoundTrip() throws IOException {
+        for (boolean metric : new boolean[] {true, false}) {
+            WeatherPayload payload = createWeek(metric);
+            WeatherPayload decoded = WeatherPayload.decode(payload.encode());
+            assertEquals("Error: payload changed in a round trip", payload, decoded);
+            assertEquals(metric, decoded.metric);
+            assertEquals(TEST_TIMESTAMP, decoded.timestampMillis);
+            assertEquals(TEST_JULIAN_DAY, decoded.startJulianDay);
+            assertEquals(7, decoded.getDays().size());
+        }
+    }
+
+    public void testFixedPointTemperatures() throws IOException {
+        List<WeatherPayload.Day> days = Arrays.asList(
+                new WeatherPayload.Day(800, 21.04, -0.06),
+                new WeatherPayload.Day(500, -40.0, -273.15),
+                new WeatherPayload.Day(200, 5000.0, -5000.0));
+        WeatherPayload decoded = WeatherPayload.decode(
+                new WeatherPayload(true, TEST_TIMESTAMP, TEST_JULIAN_DAY, days).encode());
+
+        // Tenths of a degree survive; anything finer is rounded.
+        assertEquals(21.0, decoded.getDays().get(0).getHigh(), 1e-9);
+        assertEquals(-0.1, decoded.getDays().get(0).getLow(), 1e-9);
+        assertEquals(-40.0, decoded.getDays().get(1).getHigh(), 1e-9);
+        // Halves round up, as Math.round does.
+        assertEquals(-273.1, decoded.getDays().get(1).getLow(), 1e-9);
+        // Out of range temperatures are clamped rather than wrapped.
+        assertEquals(Short.MAX_VALUE / 10.0, decoded.getDays().get(2).getHigh(), 1e-9);
+        assertEquals(Short.MIN_VALUE / 10.0, decoded.getDays().get(2).getLow(), 1e-9);
+    }
+
+    public void testGetDay() {
+        WeatherPayload payload = createWeek(true);
+        assertNull(payload.getDay(TEST_JULIAN_DAY - 1));
+        assertEquals(800, payload.getDay(TEST_JULIAN_DAY).weatherId);
+        assertEquals(801, payload.getDay(TEST_JULIAN_DAY + 1).weatherId);
+        assertNull(payload.getDay(TEST_JULIAN_DAY + 7));
+    }
+
+    public void testSize() {
+        byte[] week = createWeek(true).encode();
+        assertEquals(WeatherPayload.HEADER_SIZE + 7 * WeatherPayload.DAY_SIZE, week.length);
+
+        List<WeatherPayload.Day> days = new ArrayList<WeatherPayload.Day>();
+        for (int i = 0; i < WeatherPayload.MAX_DAYS; i++) {
+            days.add(new WeatherPayload.Day(800, 20, 10));
+        }
+        byte[] longest =
+                new WeatherPayload(true, TEST_TIMESTAMP, TEST_JULIAN_DAY, days).encode();
+        assertTrue("Error: the largest payload is " + longest.length + " bytes",
+                longest.length < 100);
+    }
+
+    public void testRejectsBadData() {
+        byte[] encoded = createWeek(true).encode();
+
+        assertFalse(WeatherPayload.isPayload(null));
+        // What older phone apps sent, less the icon asset.
+        DataMap legacy = new DataMap();
+        legacy.putString("maxTemp", "26°");
+        legacy.putString("minTemp", "-3°");
+        assertFalse(WeatherPayload.isPayload(legacy.toByteArray()));
+        assertTrue(WeatherPayload.isPayload(encoded));
+
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 1);
+        try {
+            WeatherPayload.decode(truncated);
+            fail("Error: a truncated payload should not decode");
+        } catch (IOException e) {
+            // Expected.
+        }
+
+        byte[] future = encoded.clone();
+        future[1] = WeatherPayload.VERSION + 1;
+        try {
+            WeatherPayload.decode(future);
+            fail("Error: a payload from a newer version should not decode");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+}
@@ -199,13 +199,14 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
             // Read weather condition ID from cursor
             int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
+            SettingsSnapshot settings = SettingsSnapshot.get(getActivity());
 
-            if ( Utility.usingLocalGraphics(getActivity()) ) {
+            if ( settings.localGraphics ) {
                 mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
             } else {
                 // Use weather art image
                 Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
+                        .load(settings.getArtUrl(weatherId))
                         .error(Utility.getArtResourceForWeatherCondition(weatherId))
                         .crossFade()
                         .into(mIconView);
@@ -228,16 +229,16 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
 
             // Read high temperature from cursor and update view
-            boolean isMetric = Utility.isMetric(getActivity());
+            boolean isMetric = settings.metric;
 
             double high = data.getDouble(COL_WEATHER_MAX_TEMP);
-            String highString = Utility.formatTemperature(getActivity(), high);
+            String highString = Utility.formatTemperature(getActivity(), high, isMetric);
             mHighTempView.setText(highString);
             mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
 
             // Read low temperature from cursor and update view
             double low = data.getDouble(COL_WEATHER_MIN_TEMP);
-            String lowString = Utility.formatTemperature(getActivity(), low);
+            String lowString = Utility.formatTemperature(getActivity(), low, isMetric);
             mLowTempView.setText(lowString);
             mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
 
@@ -17,7 +17,6 @@ package com.example.android.sunshine.app;
 
 import android.content.Context;
 import android.database.Cursor;
-import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
@@ -28,14 +27,15 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.load.resource.drawable.GlideDrawable;
-import com.bumptech.glide.request.RequestListener;
-import com.bumptech.glide.request.target.Target;
-import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.Collections;
+import java.util.List;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * The rows are bound from the {@link ForecastItem}s that {@link ForecastLoader} formatted
+ * along with the cursor.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -46,6 +46,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    private List<ForecastItem> mItems = Collections.emptyList();
     final private Context mContext;
     final private ForecastAdapterListener mAdapterListener;
     final private View mEmptyView;
@@ -74,16 +75,13 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mAdapterListener.onClick(mCursor.getLong(dateColumnIndex), this);
+            mAdapterListener.onClick(mItems.get(adapterPosition).date, this);
             mICM.onClick(this);
         }
     }
 
     public interface ForecastAdapterListener {
         void onClick(Long date, ForecastAdapterViewHolder vh);
-        void onWeatherImageLoaded(Drawable drawable, String max, String min);
     }
 
     public ForecastAdapter(Context context, ForecastAdapterListener dh, View emptyView, int choiceMode) {
@@ -126,77 +124,46 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        ForecastItem item = mItems.get(position);
         int defaultImage;
-        final boolean isTodaysInfo;
+        String dateText;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                isTodaysInfo = true;
+                defaultImage = item.artResource;
+                dateText = item.todayFriendlyDate;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                isTodaysInfo = false;
+                defaultImage = item.iconResource;
+                dateText = item.friendlyDate;
         }
 
         // this enables better animations. even if we lose state due to a device rotation,
         // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, isTodaysInfo));
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, item.transitionName);
 
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        forecastAdapterViewHolder.mDateView.setText(dateText);
 
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(item.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(item.descriptionA11y);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        final String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(item.high);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(item.highA11y);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        final String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(item.low);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(item.lowA11y);
 
-
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        if ( item.artUrl == null ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
-            if(isTodaysInfo) mAdapterListener.onWeatherImageLoaded(forecastAdapterViewHolder.mIconView.getDrawable(), highString, lowString);
         } else {
             Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+                    .load(item.artUrl)
                     .error(defaultImage)
                     .crossFade()
-                    .listener(new RequestListener<String, GlideDrawable>() {
-                        @Override
-                        public boolean onException(Exception e, String model, Target<GlideDrawable> target, boolean isFirstResource) {
-                            return false;
-                        }
-
-                        @Override
-                        public boolean onResourceReady(GlideDrawable resource, String model, Target<GlideDrawable> target, boolean isFromMemoryCache, boolean isFirstResource) {
-                            if(isTodaysInfo){
-                                mAdapterListener.onWeatherImageLoaded(resource, highString, lowString);
-                            }
-                            return true;
-                        }
-                    })
                     .into(forecastAdapterViewHolder.mIconView);
         }
 
@@ -226,12 +193,19 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mItems.size();
     }
 
     public void swapCursor(Cursor newCursor) {
         mCursor = newCursor;
+        if ( null == newCursor ) {
+            mItems = Collections.emptyList();
+        } else if ( newCursor instanceof ForecastLoader.ForecastCursor ) {
+            mItems = ((ForecastLoader.ForecastCursor) newCursor).getItems();
+        } else {
+            // Not from a ForecastLoader, so the rows are formatted here instead.
+            mItems = ForecastLoader.getItems(mContext, newCursor);
+        }
         notifyDataSetChanged();
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
@@ -240,6 +214,13 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return mCursor;
     }
 
+    /**
+     * @return the formatted rows, in the order of the cursor.
+     */
+    List<ForecastItem> getItems() {
+        return mItems;
+    }
+
     public void selectView(RecyclerView.ViewHolder viewHolder) {
         if ( viewHolder instanceof ForecastAdapterViewHolder ) {
             ForecastAdapterViewHolder vfh = (ForecastAdapterViewHolder)viewHolder;
@@ -21,10 +21,6 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.TypedArray;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -32,7 +28,6 @@ import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
@@ -51,22 +46,13 @@ import android.widget.TextView;
 
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.Asset;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
-
-import java.io.ByteArrayOutputStream;
-import java.util.concurrent.TimeUnit;
+
+import java.util.List;
 
 /**
  * Encapsulates fetching the forecast and displaying it as a {@link android.support.v7.widget.RecyclerView} layout.
  */
-public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>, SharedPreferences.OnSharedPreferenceChangeListener, GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
+public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>, SharedPreferences.OnSharedPreferenceChangeListener {
     public static final String LOG_TAG = ForecastFragment.class.getSimpleName();
     private ForecastAdapter mForecastAdapter;
     private RecyclerView mRecyclerView;
@@ -74,7 +60,6 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private int mChoiceMode;
     private boolean mHoldForTransition;
     private long mInitialSelectedDate = -1;
-    private static final String TAG = ForecastFragment.class.getSimpleName();
 
     private static final String SELECTED_KEY = "selected_position";
 
@@ -110,23 +95,6 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     static final int COL_WEATHER_CONDITION_ID = 6;
     static final int COL_COORD_LAT = 7;
     static final int COL_COORD_LONG = 8;
-    private GoogleApiClient mGoogleApiClient;
-    public static final String PATH = "/sunshine_data_update";
-
-    @Override
-    public void onConnected(Bundle bundle) {
-        Log.d(TAG, "onConnected: " + bundle);
-    }
-
-    @Override
-    public void onConnectionSuspended(int i) {
-        Log.d(TAG, "onConnectionSuspended: " + i);
-    }
-
-    @Override
-    public void onConnectionFailed(ConnectionResult connectionResult) {
-        Log.d(TAG, "onConnectionFailed: " + connectionResult);
-    }
 
     /**
      * A callback interface that all activities containing this fragment must
@@ -148,23 +116,12 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         super.onCreate(savedInstanceState);
         // Add this line in order for this fragment to handle menu events.
         setHasOptionsMenu(true);
-
-        mGoogleApiClient = new GoogleApiClient.Builder(getActivity())
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .addApi(Wearable.API)
-                .build();
     }
 
     @Override
     public void onResume() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
         sp.registerOnSharedPreferenceChangeListener(this);
-
-        if (mGoogleApiClient != null) {
-            if (!mGoogleApiClient.isConnected()) mGoogleApiClient.connect();
-        }
-
         super.onResume();
     }
 
@@ -172,11 +129,6 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public void onPause() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
         sp.unregisterOnSharedPreferenceChangeListener(this);
-
-        if (mGoogleApiClient != null) {
-            if (mGoogleApiClient.isConnected()) mGoogleApiClient.disconnect();
-        }
-
         super.onPause();
     }
 
@@ -199,10 +151,6 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             openPreferredLocationInMap();
             return true;
         }
-//        if (id == R.id.action_send_to_wear) {
-//            sendWeatherImage(getResources().getDrawable(R.drawable.ic_clear), "273", "73");
-//            return true;
-//        }
 
         return super.onOptionsItemSelected(item);
     }
@@ -248,11 +196,6 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                                 vh
                         );
             }
-
-            @Override
-            public void onWeatherImageLoaded(Drawable drawable, String max, String min) {
-                sendWeatherImage(drawable, max, min);
-            }
         }, emptyView, mChoiceMode);
 
         // specify an adapter (see also next example)
@@ -374,7 +317,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 locationSetting, System.currentTimeMillis());
 
-        return new CursorLoader(getActivity(),
+        return new ForecastLoader(getActivity(),
                 weatherForLocationUri,
                 FORECAST_COLUMNS,
                 null,
@@ -382,72 +325,6 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                 sortOrder);
     }
 
-    public static Bitmap drawableToBitmap(Drawable drawable) {
-        Bitmap bitmap = null;
-
-        if (drawable instanceof BitmapDrawable) {
-            BitmapDrawable bitmapDrawable = (BitmapDrawable) drawable;
-            if (bitmapDrawable.getBitmap() != null) {
-                return bitmapDrawable.getBitmap();
-            }
-        }
-
-        if (drawable.getIntrinsicWidth() <= 0 || drawable.getIntrinsicHeight() <= 0) {
-            bitmap = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888); // Single color bitmap will be created of 1x1 pixel
-        } else {
-            bitmap = Bitmap.createBitmap(drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight(), Bitmap.Config.ARGB_8888);
-        }
-
-        Canvas canvas = new Canvas(bitmap);
-        drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
-        drawable.draw(canvas);
-        return bitmap;
-    }
-
-    private static Asset createAssetFromBitmap(Bitmap bitmap) {
-        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
-        return Asset.createFromBytes(byteStream.toByteArray());
-    }
-
-    // Create a data map and put data in it
-    private void sendWeatherImage(Drawable drawable, String max, String min) {
-        Asset asset = createAssetFromBitmap(drawableToBitmap(drawable));
-        PutDataMapRequest dataMap = PutDataMapRequest.create(PATH);
-        dataMap.getDataMap().putAsset("weatherImage", asset);
-        dataMap.getDataMap().putString("maxTemp", max);
-        dataMap.getDataMap().putString("minTemp", min);
-        PutDataRequest request = dataMap.asPutDataRequest();
-        Log.e(TAG, "putDataReq image " + asset);
-        Log.e(TAG, "putDataReq maxTemp " + max);
-        Log.e(TAG, "putDataReq minTemp " + min);
-        Wearable.DataApi.putDataItem(mGoogleApiClient, request)
-                .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                    @Override
-                    public void onResult(DataApi.DataItemResult dataItemResult) {
-                        Log.e(TAG, "putDataItem result status: " + dataItemResult.getStatus());
-                    }
-                }, 10, TimeUnit.SECONDS);
-
-    }
-
-//    // Create a data map and put data in it
-//    private void sendWeatherInfo(String max, String min) {
-//        PutDataMapRequest putDataMapReq = PutDataMapRequest.create(PATH);
-//        putDataMapReq.getDataMap().putString("maxTemp", max);
-//        putDataMapReq.getDataMap().putString("minTemp", min);
-//        Log.e(TAG, "putDataReq maxTemp " + max);
-//        Log.e(TAG, "putDataReq minTemp " + min);
-//        PutDataRequest putDataReq = putDataMapReq.asPutDataRequest();
-//        Wearable.DataApi.putDataItem(mGoogleApiClient, putDataReq)
-//                .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-//                    @Override
-//                    public void onResult(DataApi.DataItemResult dataItemResult) {
-//                        Log.e(TAG, "putDataItem result status: " + dataItemResult.getStatus());
-//                    }
-//                }, 10, TimeUnit.SECONDS);
-//    }
-
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         mForecastAdapter.swapCursor(data);
@@ -465,12 +342,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                         int position = mForecastAdapter.getSelectedItemPosition();
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
-                            Cursor data = mForecastAdapter.getCursor();
-                            int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
+                            List<ForecastItem> items = mForecastAdapter.getItems();
+                            int count = items.size();
                             for (int i = 0; i < count; i++) {
-                                data.moveToPosition(i);
-                                if (data.getLong(dateColumn) == mInitialSelectedDate) {
+                                if (items.get(i).date == mInitialSelectedDate) {
                                     position = i;
                                     break;
                                 }
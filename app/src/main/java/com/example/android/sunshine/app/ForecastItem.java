@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+
+/**
+ * One row of the forecast list, with everything the row shows already formatted, so binding
+ * it to a view only sets fields.
+ *
+ * Items are made by {@link ForecastLoader} off the main thread, once per change of the data or
+ * of the settings that format it.
+ */
+final class ForecastItem {
+    public final long date;
+    public final int weatherId;
+    /** Lets the animator find the icon again, even after a rotation. */
+    public final String transitionName;
+
+    /** The date as shown in a row, e.g. "Tomorrow". */
+    public final String friendlyDate;
+    /** The date as shown in the larger row for today, e.g. "Today, June 8". */
+    public final String todayFriendlyDate;
+
+    public final String description;
+    public final String descriptionA11y;
+    public final String high;
+    public final String highA11y;
+    public final String low;
+    public final String lowA11y;
+
+    public final int iconResource;
+    public final int artResource;
+    /** The art to load into the icon, or null to show the resource instead. */
+    public final String artUrl;
+
+    /**
+     * Formats the row at the cursor's current position, which holds
+     * {@link ForecastFragment}'s columns.
+     */
+    ForecastItem(Context context, SettingsSnapshot settings, Cursor cursor) {
+        date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        transitionName = "iconView" + cursor.getPosition();
+
+        friendlyDate = Utility.getFriendlyDayString(context, date, false);
+        todayFriendlyDate = Utility.getFriendlyDayString(context, date, true);
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionA11y = context.getString(R.string.a11y_forecast, description);
+        high = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP), settings.metric);
+        highA11y = context.getString(R.string.a11y_high_temp, high);
+        low = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP), settings.metric);
+        lowA11y = context.getString(R.string.a11y_low_temp, low);
+
+        iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = settings.localGraphics ? null : settings.getArtUrl(weatherId);
+    }
+}
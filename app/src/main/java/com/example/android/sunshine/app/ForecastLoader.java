@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loads the forecast list, and formats its rows into {@link ForecastItem}s on the loader's
+ * thread.
+ *
+ * The cursor is still handed over, wrapped in a {@link ForecastCursor} that carries the items,
+ * so the loader keeps watching it for changes and closes it when it is replaced.
+ */
+class ForecastLoader extends CursorLoader {
+
+    /**
+     * The loaded cursor, with its rows already formatted.
+     */
+    static final class ForecastCursor extends CursorWrapper {
+        private final List<ForecastItem> mItems;
+
+        ForecastCursor(Cursor cursor, List<ForecastItem> items) {
+            super(cursor);
+            mItems = items;
+        }
+
+        /**
+         * @return the rows of the cursor, in the same order.  The list can't be modified.
+         */
+        List<ForecastItem> getItems() {
+            return mItems;
+        }
+    }
+
+    ForecastLoader(Context context, Uri uri, String[] projection, String selection,
+                   String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return new ForecastCursor(cursor, getItems(getContext(), cursor));
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Formats every row of a cursor holding {@link ForecastFragment}'s columns.
+     */
+    static List<ForecastItem> getItems(Context context, Cursor cursor) {
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        List<ForecastItem> items = new ArrayList<ForecastItem>(cursor.getCount());
+        for (int position = 0; cursor.moveToPosition(position); position++) {
+            items.add(new ForecastItem(context, settings, cursor));
+        }
+        return Collections.unmodifiableList(items);
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.text.format.Time;
+import android.util.SparseArray;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The temperature and date strings shown for every list row, widget row and notification.
+ *
+ * Formatting a temperature or a day allocates formatters, dates and buffers, yet a forecast
+ * only ever shows a few dozen distinct values.  Temperatures are formatted once per whole
+ * degree and kept for as long as the locale doesn't change.  Day labels are kept per local day
+ * until the date changes, along with the formatters that make them, one set per thread since
+ * SimpleDateFormat isn't thread safe.
+ */
+final class Formatters {
+
+    // Whole degrees with a cached string, in whichever units are shown.
+    static final int MIN_CACHED_DEGREES = -100;
+    static final int MAX_CACHED_DEGREES = 150;
+
+    // How often a thread checks whether the default time zone has changed.
+    private static final long ZONE_CHECK_INTERVAL_MILLIS = 60 * 1000;
+
+    private static final class DegreeStrings {
+        final Locale locale;
+        final String format;
+        // Filled in as degrees are needed.  Strings are immutable, so a racing thread either
+        // sees one or formats its own, equal, copy.
+        final String[] strings = new String[MAX_CACHED_DEGREES - MIN_CACHED_DEGREES + 1];
+
+        DegreeStrings(Locale locale, String format) {
+            this.locale = locale;
+            this.format = format;
+        }
+    }
+
+    private static volatile DegreeStrings sDegreeStrings;
+
+    private static final ThreadLocal<DayLabels> sDayLabels = new ThreadLocal<DayLabels>() {
+        @Override
+        protected DayLabels initialValue() {
+            return new DayLabels();
+        }
+    };
+
+    /**
+     * @return the temperature in the given units, rounded to a whole degree.
+     */
+    static String formatTemperature(Context context, double temperature, boolean isMetric) {
+        // Data stored in Celsius by default.  If user prefers to see in Fahrenheit, convert
+        // the values here.
+        if (!isMetric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+
+        // For presentation, assume the user doesn't care about tenths of a degree.
+        String format = context.getString(R.string.format_temperature);
+        double magnitude = Math.abs(temperature);
+        if (!(magnitude <= Math.max(-MIN_CACHED_DEGREES, MAX_CACHED_DEGREES))) {
+            return String.format(format, temperature);
+        }
+        // Round half up, as the format does.
+        long whole = (long) magnitude;
+        if (magnitude - whole >= 0.5) {
+            whole++;
+        }
+        // Small negative temperatures are formatted as "-0", which has no entry of its own.
+        if (whole == 0 && Double.doubleToRawLongBits(temperature) < 0) {
+            return String.format(format, temperature);
+        }
+        int degrees = (int) (temperature < 0 ? -whole : whole);
+        if (degrees < MIN_CACHED_DEGREES || degrees > MAX_CACHED_DEGREES) {
+            return String.format(format, temperature);
+        }
+
+        Locale locale = Locale.getDefault();
+        DegreeStrings cache = sDegreeStrings;
+        if (cache == null || !cache.locale.equals(locale) || !cache.format.equals(format)) {
+            cache = new DegreeStrings(locale, format);
+            sDegreeStrings = cache;
+        }
+        int index = degrees - MIN_CACHED_DEGREES;
+        String formatted = cache.strings[index];
+        if (formatted == null) {
+            formatted = String.format(format, (double) degrees);
+            cache.strings[index] = formatted;
+        }
+        return formatted;
+    }
+
+    /**
+     * @see Utility#getFriendlyDayString(Context, long, boolean)
+     */
+    static String getFriendlyDayString(Context context, long dateInMillis,
+                                       boolean displayLongToday) {
+        return sDayLabels.get().getFriendlyDayString(context, dateInMillis, displayLongToday);
+    }
+
+    /**
+     * @see Utility#getFullFriendlyDayString(Context, long)
+     */
+    static String getFullFriendlyDayString(Context context, long dateInMillis) {
+        return sDayLabels.get().getFullFriendlyDayString(context, dateInMillis);
+    }
+
+    /**
+     * @see Utility#getDayName(Context, long)
+     */
+    static String getDayName(Context context, long dateInMillis) {
+        return sDayLabels.get().getDayName(context, dateInMillis);
+    }
+
+    /**
+     * @see Utility#getFormattedMonthDay(Context, long)
+     */
+    static String getFormattedMonthDay(long dateInMillis) {
+        return sDayLabels.get().getFormattedMonthDay(dateInMillis);
+    }
+
+    /**
+     * The day labels of one thread, by local julian day, for the day they were made on.
+     */
+    private static final class DayLabels {
+        private Locale mLocale;
+        private TimeZone mZone;
+        private long mZoneCheckedAt;
+        private int mToday;
+
+        private SimpleDateFormat mDayNameFormat;
+        private SimpleDateFormat mShortDateFormat;
+        private SimpleDateFormat mMonthDayFormat;
+
+        private final SparseArray<String> mFriendly = new SparseArray<String>();
+        private final SparseArray<String> mFriendlyLongToday = new SparseArray<String>();
+        private final SparseArray<String> mFullFriendly = new SparseArray<String>();
+        private final SparseArray<String> mDayNames = new SparseArray<String>();
+        private final SparseArray<String> mMonthDays = new SparseArray<String>();
+
+        /**
+         * Rebuilds the formatters if the locale or time zone changed, and forgets the labels
+         * if either did, or the date did.
+         *
+         * @return the local julian day of the date.
+         */
+        private int prepare(long dateInMillis) {
+            long now = System.currentTimeMillis();
+            Locale locale = Locale.getDefault();
+            boolean changed = !locale.equals(mLocale);
+            // TimeZone.getDefault() returns a copy, so it isn't asked on every call.
+            if (mZone == null || now - mZoneCheckedAt >= ZONE_CHECK_INTERVAL_MILLIS
+                    || now < mZoneCheckedAt) {
+                TimeZone zone = TimeZone.getDefault();
+                mZoneCheckedAt = now;
+                if (mZone == null || !mZone.getID().equals(zone.getID())) {
+                    mZone = zone;
+                    changed = true;
+                }
+            }
+            if (changed) {
+                mLocale = locale;
+                mDayNameFormat = newFormat("EEEE");
+                mShortDateFormat = newFormat("EEE MMM dd");
+                mMonthDayFormat = newFormat("MMMM dd");
+            }
+
+            // As before, both days are taken at the current offset from UTC.
+            int gmtoff = mZone.getOffset(now) / 1000;
+            int today = Time.getJulianDay(now, gmtoff);
+            if (changed || today != mToday) {
+                mToday = today;
+                mFriendly.clear();
+                mFriendlyLongToday.clear();
+                mFullFriendly.clear();
+                mDayNames.clear();
+                mMonthDays.clear();
+            }
+            return Time.getJulianDay(dateInMillis, gmtoff);
+        }
+
+        private SimpleDateFormat newFormat(String pattern) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, mLocale);
+            format.setTimeZone(mZone);
+            return format;
+        }
+
+        String getFriendlyDayString(Context context, long dateInMillis,
+                                    boolean displayLongToday) {
+            int julianDay = prepare(dateInMillis);
+            SparseArray<String> labels = displayLongToday ? mFriendlyLongToday : mFriendly;
+            String label = labels.get(julianDay);
+            if (label == null) {
+                // The day string for forecast uses the following logic:
+                // For today: "Today, June 8"
+                // For tomorrow:  "Tomorrow"
+                // For the next 5 days: "Wednesday" (just the day name)
+                // For all days after that: "Mon Jun 8"
+                if (displayLongToday && julianDay == mToday) {
+                    label = context.getString(R.string.format_full_friendly_date,
+                            context.getString(R.string.today),
+                            monthDay(julianDay, dateInMillis));
+                } else if (julianDay < mToday + 7) {
+                    label = dayName(context, julianDay, dateInMillis);
+                } else {
+                    label = mShortDateFormat.format(dateInMillis);
+                }
+                labels.put(julianDay, label);
+            }
+            return label;
+        }
+
+        String getFullFriendlyDayString(Context context, long dateInMillis) {
+            int julianDay = prepare(dateInMillis);
+            String label = mFullFriendly.get(julianDay);
+            if (label == null) {
+                label = context.getString(R.string.format_full_friendly_date,
+                        dayName(context, julianDay, dateInMillis),
+                        monthDay(julianDay, dateInMillis));
+                mFullFriendly.put(julianDay, label);
+            }
+            return label;
+        }
+
+        String getDayName(Context context, long dateInMillis) {
+            return dayName(context, prepare(dateInMillis), dateInMillis);
+        }
+
+        String getFormattedMonthDay(long dateInMillis) {
+            return monthDay(prepare(dateInMillis), dateInMillis);
+        }
+
+        private String dayName(Context context, int julianDay, long dateInMillis) {
+            String name = mDayNames.get(julianDay);
+            if (name == null) {
+                // If the date is today, return the localized version of "Today" instead of the
+                // actual day name.
+                if (julianDay == mToday) {
+                    name = context.getString(R.string.today);
+                } else if (julianDay == mToday + 1) {
+                    name = context.getString(R.string.tomorrow);
+                } else {
+                    // Otherwise, the format is just the day of the week (e.g "Wednesday").
+                    name = mDayNameFormat.format(dateInMillis);
+                }
+                mDayNames.put(julianDay, name);
+            }
+            return name;
+        }
+
+        private String monthDay(int julianDay, long dateInMillis) {
+            String monthDay = mMonthDays.get(julianDay);
+            if (monthDay == null) {
+                monthDay = mMonthDayFormat.format(dateInMillis);
+                mMonthDays.put(julianDay, monthDay);
+            }
+            return monthDay;
+        }
+    }
+
+    private Formatters() {
+    }
+}
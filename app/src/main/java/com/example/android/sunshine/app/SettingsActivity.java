@@ -27,6 +27,7 @@ import android.preference.PreferenceManager;
 
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.wear.WearPublisherService;
 
 /**
  * A {@link PreferenceActivity} that presents a set of application settings.
@@ -139,6 +140,8 @@ public class SettingsActivity extends PreferenceActivity
         } else if ( key.equals(getString(R.string.pref_units_key)) ) {
             // units have changed. update lists of weather entries accordingly
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // the watch face formats temperatures in the units it is sent
+            WearPublisherService.publish(this);
         } else if ( key.equals(getString(R.string.pref_location_status_key)) ) {
             // our location status has changed.  Update the summary accordingly
             Preference locationPreference = findPreference(getString(R.string.pref_location_key));
@@ -146,6 +149,11 @@ public class SettingsActivity extends PreferenceActivity
         } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
             // art pack have changed. update lists of weather entries accordingly
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+        } else if ( key.equals(getString(R.string.pref_sync_all_locations_key)) ) {
+            // bring the other saved locations up to date straight away
+            if ( SunshineSyncAdapter.isSyncAllLocationsEnabled(this) ) {
+                SunshineSyncAdapter.syncImmediately(this);
+            }
         }
     }
 
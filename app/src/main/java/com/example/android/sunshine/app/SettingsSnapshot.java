@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * The settings that are read while binding list rows, widgets and notifications: location,
+ * units and art pack.
+ *
+ * A snapshot is immutable.  The current one is rebuilt from an
+ * {@link SharedPreferences.OnSharedPreferenceChangeListener} whenever one of those settings
+ * changes, so reading a setting costs a field load instead of a preference lookup and a
+ * resource string load.  Listeners are notified on the main thread, so a change made on another
+ * thread shows up here shortly after the write, not during it.
+ */
+public final class SettingsSnapshot {
+
+    public final String location;
+    public final boolean metric;
+    /** The URL format of the art pack, with a %s for the name of the art. */
+    public final String artPack;
+    public final boolean localGraphics;
+
+    private static volatile SettingsSnapshot sCurrent;
+
+    // SharedPreferences only holds its listeners weakly, so this keeps ours alive.
+    private static Listener sListener;
+
+    private SettingsSnapshot(String location, boolean metric, String artPack,
+                             boolean localGraphics) {
+        this.location = location;
+        this.metric = metric;
+        this.artPack = artPack;
+        this.localGraphics = localGraphics;
+    }
+
+    /**
+     * @return the current settings.
+     */
+    public static SettingsSnapshot get(Context context) {
+        SettingsSnapshot current = sCurrent;
+        return current != null ? current : init(context);
+    }
+
+    private static synchronized SettingsSnapshot init(Context context) {
+        if (sCurrent == null) {
+            Context appContext = context.getApplicationContext();
+            sListener = new Listener(appContext);
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+            prefs.registerOnSharedPreferenceChangeListener(sListener);
+            sCurrent = sListener.read(prefs);
+        }
+        return sCurrent;
+    }
+
+    /**
+     * @return the URL of the art for the condition in the current art pack, or null.
+     */
+    public String getArtUrl(int weatherId) {
+        return WeatherConditions.getArtUrl(artPack, weatherId);
+    }
+
+    private static final class Listener
+            implements SharedPreferences.OnSharedPreferenceChangeListener {
+        private final String mLocationKey;
+        private final String mLocationDefault;
+        private final String mUnitsKey;
+        private final String mUnitsMetric;
+        private final String mArtPackKey;
+        private final String mArtPackSunshine;
+
+        Listener(Context context) {
+            mLocationKey = context.getString(R.string.pref_location_key);
+            mLocationDefault = context.getString(R.string.pref_location_default);
+            mUnitsKey = context.getString(R.string.pref_units_key);
+            mUnitsMetric = context.getString(R.string.pref_units_metric);
+            mArtPackKey = context.getString(R.string.pref_art_pack_key);
+            mArtPackSunshine = context.getString(R.string.pref_art_pack_sunshine);
+        }
+
+        SettingsSnapshot read(SharedPreferences prefs) {
+            String artPack = prefs.getString(mArtPackKey, mArtPackSunshine);
+            return new SettingsSnapshot(
+                    prefs.getString(mLocationKey, mLocationDefault),
+                    prefs.getString(mUnitsKey, mUnitsMetric).equals(mUnitsMetric),
+                    artPack,
+                    artPack.equals(mArtPackSunshine));
+        }
+
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+            // The location status changes with every sync, and isn't part of the snapshot.
+            if (mLocationKey.equals(key) || mUnitsKey.equals(key) || mArtPackKey.equals(key)) {
+                sCurrent = read(prefs);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import com.example.android.sunshine.shared.WeatherKind;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What the app shows for each OpenWeatherMap condition id: icon, art, description and
+ * images.  Built once into tables indexed by id, so the lookups done for every list row,
+ * widget row and notification don't walk a chain of comparisons.  Which icon and art an id
+ * gets comes from its {@link WeatherKind}, which the watch face shares.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+final class WeatherConditions {
+
+    /** Condition ids go up to 962; anything larger has no icon, art or description. */
+    static final int MAX_WEATHER_ID = WeatherKind.MAX_WEATHER_ID;
+
+    // Indexed by WeatherKind.
+    private static final int[] ICONS = {
+            R.drawable.ic_storm,
+            R.drawable.ic_light_rain,
+            R.drawable.ic_rain,
+            R.drawable.ic_snow,
+            R.drawable.ic_fog,
+            R.drawable.ic_clear,
+            R.drawable.ic_light_clouds,
+            R.drawable.ic_cloudy
+    };
+    private static final int[] ARTS = {
+            R.drawable.art_storm,
+            R.drawable.art_light_rain,
+            R.drawable.art_rain,
+            R.drawable.art_snow,
+            R.drawable.art_fog,
+            R.drawable.art_clear,
+            R.drawable.art_light_clouds,
+            R.drawable.art_clouds
+    };
+    // What goes in the %s of an art pack's URL format.
+    private static final String[] ART_NAMES = {
+            "storm",
+            "light_rain",
+            "rain",
+            "snow",
+            "fog",
+            "clear",
+            "light_clouds",
+            "clouds"
+    };
+
+    // Indexed by weather id.
+    private static final String[] sImageUrls = new String[MAX_WEATHER_ID + 1];
+    private static final int[] sStringIds = new int[MAX_WEATHER_ID + 1];
+
+    // The art URLs of each art pack, by URL format, indexed by the kinds of weather.
+    private static final ConcurrentHashMap<String, String[]> sArtUrls =
+            new ConcurrentHashMap<String, String[]>();
+
+    static {
+        setImageUrl(200, 232,
+                "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg");
+        setImageUrl(300, 321,
+                "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg");
+        setImageUrl(500, 504,
+                "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg");
+        setImageUrl(511, 511,
+                "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG");
+        setImageUrl(520, 531,
+                "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg");
+        setImageUrl(600, 622,
+                "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG");
+        setImageUrl(701, 761,
+                "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg");
+        setImageUrl(781, 781,
+                "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg");
+        setImageUrl(800, 800,
+                "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg");
+        setImageUrl(801, 801,
+                "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg");
+        setImageUrl(802, 804,
+                "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg");
+
+        Arrays.fill(sStringIds, 200, 233, R.string.condition_2xx);
+        Arrays.fill(sStringIds, 300, 322, R.string.condition_3xx);
+        int[] descriptions = {
+                500, R.string.condition_500,
+                501, R.string.condition_501,
+                502, R.string.condition_502,
+                503, R.string.condition_503,
+                504, R.string.condition_504,
+                511, R.string.condition_511,
+                520, R.string.condition_520,
+                531, R.string.condition_531,
+                600, R.string.condition_600,
+                601, R.string.condition_601,
+                602, R.string.condition_602,
+                611, R.string.condition_611,
+                612, R.string.condition_612,
+                615, R.string.condition_615,
+                616, R.string.condition_616,
+                620, R.string.condition_620,
+                621, R.string.condition_621,
+                622, R.string.condition_622,
+                701, R.string.condition_701,
+                711, R.string.condition_711,
+                721, R.string.condition_721,
+                731, R.string.condition_731,
+                741, R.string.condition_741,
+                751, R.string.condition_751,
+                761, R.string.condition_761,
+                762, R.string.condition_762,
+                771, R.string.condition_771,
+                781, R.string.condition_781,
+                800, R.string.condition_800,
+                801, R.string.condition_801,
+                802, R.string.condition_802,
+                803, R.string.condition_803,
+                804, R.string.condition_804,
+                900, R.string.condition_900,
+                901, R.string.condition_901,
+                902, R.string.condition_902,
+                903, R.string.condition_903,
+                904, R.string.condition_904,
+                905, R.string.condition_905,
+                906, R.string.condition_906,
+                951, R.string.condition_951,
+                952, R.string.condition_952,
+                953, R.string.condition_953,
+                954, R.string.condition_954,
+                955, R.string.condition_955,
+                956, R.string.condition_956,
+                957, R.string.condition_957,
+                958, R.string.condition_958,
+                959, R.string.condition_959,
+                960, R.string.condition_960,
+                961, R.string.condition_961,
+                962, R.string.condition_962
+        };
+        for (int i = 0; i < descriptions.length; i += 2) {
+            sStringIds[descriptions[i]] = descriptions[i + 1];
+        }
+    }
+
+    private static void setImageUrl(int firstId, int lastId, String imageUrl) {
+        Arrays.fill(sImageUrls, firstId, lastId + 1, imageUrl);
+    }
+
+    /** @return the icon for the condition, or -1. */
+    static int getIconResource(int weatherId) {
+        int kind = WeatherKind.get(weatherId);
+        return kind == WeatherKind.NONE ? -1 : ICONS[kind];
+    }
+
+    /** @return the art for the condition, or -1. */
+    static int getArtResource(int weatherId) {
+        int kind = WeatherKind.get(weatherId);
+        return kind == WeatherKind.NONE ? -1 : ARTS[kind];
+    }
+
+    /**
+     * @param artPackFormat the URL format of an art pack, with a %s for the name of the art.
+     * @return the URL of the condition's art in that pack, or null.
+     */
+    static String getArtUrl(String artPackFormat, int weatherId) {
+        int kind = WeatherKind.get(weatherId);
+        if (kind == WeatherKind.NONE) {
+            return null;
+        }
+        String[] urls = sArtUrls.get(artPackFormat);
+        if (urls == null) {
+            urls = new String[ART_NAMES.length];
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = String.format(Locale.US, artPackFormat, ART_NAMES[i]);
+            }
+            // Racing threads format the same URLs, so either copy will do.
+            sArtUrls.put(artPackFormat, urls);
+        }
+        return urls[kind];
+    }
+
+    /** @return the description of the condition, or 0 if there is none. */
+    static int getStringResource(int weatherId) {
+        return weatherId >= 0 && weatherId <= MAX_WEATHER_ID ? sStringIds[weatherId] : 0;
+    }
+
+    /** @return a photo of the condition, or null. */
+    static String getImageUrl(int weatherId) {
+        return weatherId >= 0 && weatherId <= MAX_WEATHER_ID ? sImageUrls[weatherId] : null;
+    }
+
+    private WeatherConditions() {
+    }
+}
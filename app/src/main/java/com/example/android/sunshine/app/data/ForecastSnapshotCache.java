@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.database.AbstractCursor;
+import android.database.AbstractWindowedCursor;
+import android.database.Cursor;
+import android.os.Build;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the results of the per-location weather queries, so that the forecast list, the
+ * widgets, Muzei and the notification don't each run the same join after every sync.
+ *
+ * Results are copied into immutable snapshots and handed out as cursors over those snapshots.
+ * Snapshots are dropped per location whenever that location's weather is written.  A query
+ * that was already reading the database when its location was invalidated never stores its
+ * (possibly stale) result.
+ */
+public class ForecastSnapshotCache {
+
+    static final int MAX_SNAPSHOTS = 16;
+
+    /**
+     * Identifies one query: the location, the date arguments of its uri, the projection and the
+     * sort order.
+     */
+    static final class Key {
+        final String locationSetting;
+        final long startDate;
+        final long date;
+        final String[] projection;
+        final String sortOrder;
+        private final int mHashCode;
+
+        Key(String locationSetting, long startDate, long date, String[] projection,
+            String sortOrder) {
+            this.locationSetting = locationSetting;
+            this.startDate = startDate;
+            this.date = date;
+            this.projection = projection == null ? null : projection.clone();
+            this.sortOrder = sortOrder;
+            mHashCode = Arrays.hashCode(new Object[]{locationSetting, startDate, date,
+                    Arrays.hashCode(projection), sortOrder});
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return startDate == other.startDate
+                    && date == other.date
+                    && locationSetting.equals(other.locationSetting)
+                    && Arrays.equals(projection, other.projection)
+                    && (sortOrder == null ? other.sortOrder == null
+                            : sortOrder.equals(other.sortOrder));
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+    /**
+     * What a loader holds on to between looking up a key and storing the result it read:
+     * the generations of the cache and of the location at the time of the lookup.
+     */
+    static final class Ticket {
+        final long generation;
+        final long locationGeneration;
+
+        Ticket(long generation, long locationGeneration) {
+            this.generation = generation;
+            this.locationGeneration = locationGeneration;
+        }
+    }
+
+    /**
+     * The rows of a query result.  Never modified once built.
+     */
+    static final class Snapshot {
+        final String[] columns;
+        final Object[][] rows;
+
+        Snapshot(String[] columns, Object[][] rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        Cursor newCursor() {
+            return new SnapshotCursor(this);
+        }
+
+        /**
+         * Reads every row of a cursor.  The cursor is left open.
+         */
+        static Snapshot copyOf(Cursor cursor) {
+            String[] columns = cursor.getColumnNames();
+            Object[][] rows = new Object[cursor.getCount()][];
+            cursor.moveToPosition(-1);
+            for (int row = 0; cursor.moveToNext(); row++) {
+                Object[] values = new Object[columns.length];
+                for (int column = 0; column < columns.length; column++) {
+                    values[column] = readValue(cursor, column);
+                }
+                rows[row] = values;
+            }
+            cursor.moveToPosition(-1);
+            return new Snapshot(columns, rows);
+        }
+
+        private static Object readValue(Cursor cursor, int column) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                return readTypedValue(cursor, column);
+            }
+            if (cursor.isNull(column)) {
+                return null;
+            }
+            if (cursor instanceof AbstractWindowedCursor) {
+                @SuppressWarnings("deprecation")
+                AbstractWindowedCursor windowed = (AbstractWindowedCursor) cursor;
+                if (windowed.isLong(column)) {
+                    return cursor.getLong(column);
+                } else if (windowed.isFloat(column)) {
+                    return cursor.getDouble(column);
+                } else if (windowed.isBlob(column)) {
+                    return cursor.getBlob(column);
+                }
+            }
+            return cursor.getString(column);
+        }
+
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        private static Object readTypedValue(Cursor cursor, int column) {
+            switch (cursor.getType(column)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    return null;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    return cursor.getLong(column);
+                case Cursor.FIELD_TYPE_FLOAT:
+                    return cursor.getDouble(column);
+                case Cursor.FIELD_TYPE_BLOB:
+                    return cursor.getBlob(column);
+                default:
+                    return cursor.getString(column);
+            }
+        }
+    }
+
+    /**
+     * A read-only cursor over a {@link Snapshot}.  Unlike a MatrixCursor it doesn't copy the
+     * rows, since the snapshot never changes underneath it.
+     */
+    static final class SnapshotCursor extends AbstractCursor {
+        private final Snapshot mSnapshot;
+
+        SnapshotCursor(Snapshot snapshot) {
+            mSnapshot = snapshot;
+        }
+
+        private Object get(int column) {
+            if (column < 0 || column >= mSnapshot.columns.length) {
+                throw new IllegalArgumentException("Column " + column + " is out of range");
+            }
+            if (mPos < 0 || mPos >= mSnapshot.rows.length) {
+                throw new android.database.CursorIndexOutOfBoundsException(
+                        mPos, mSnapshot.rows.length);
+            }
+            return mSnapshot.rows[mPos][column];
+        }
+
+        @Override
+        public int getCount() {
+            return mSnapshot.rows.length;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mSnapshot.columns;
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = get(column);
+            if (value instanceof Double) {
+                return formatReal((Double) value);
+            }
+            return value == null ? null : value.toString();
+        }
+
+        /*
+            Formats a REAL the way SQLite does when it is read as text (15 significant digits,
+            always with a decimal point), so getString returns what a database cursor would.
+         */
+        static String formatReal(double value) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                return Double.toString(value);
+            }
+            String text = new BigDecimal(value).round(new MathContext(15))
+                    .stripTrailingZeros().toPlainString();
+            return text.indexOf('.') < 0 ? text + ".0" : text;
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return 0;
+            } else if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            return Long.parseLong(value.toString());
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return 0;
+            } else if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return Double.parseDouble(value.toString());
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            Object value = get(column);
+            return value instanceof byte[] ? ((byte[]) value).clone() : null;
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return FIELD_TYPE_NULL;
+            } else if (value instanceof Long) {
+                return FIELD_TYPE_INTEGER;
+            } else if (value instanceof Double) {
+                return FIELD_TYPE_FLOAT;
+            } else if (value instanceof byte[]) {
+                return FIELD_TYPE_BLOB;
+            }
+            return FIELD_TYPE_STRING;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return get(column) == null;
+        }
+    }
+
+    private final LinkedHashMap<Key, Snapshot> mSnapshots =
+            new LinkedHashMap<Key, Snapshot>(MAX_SNAPSHOTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Snapshot> eldest) {
+                    return size() > MAX_SNAPSHOTS;
+                }
+            };
+    private final HashMap<String, Long> mLocationGenerations = new HashMap<String, Long>();
+    private long mGeneration;
+
+    private long mHits;
+    private long mMisses;
+    private long mInvalidations;
+
+    /**
+     * @return a cursor over the stored result for {@code key}, or null if there is none.
+     */
+    public synchronized Cursor get(Key key) {
+        Snapshot snapshot = mSnapshots.get(key);
+        if (snapshot == null) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return snapshot.newCursor();
+    }
+
+    /**
+     * Call before reading the database for a result that will be stored with {@link #put}.
+     */
+    public synchronized Ticket newTicket(String locationSetting) {
+        return new Ticket(mGeneration, getLocationGeneration(locationSetting));
+    }
+
+    /**
+     * Stores a result read from the database, unless its location was invalidated since
+     * {@code ticket} was handed out.
+     *
+     * @return a cursor over the stored copy.  {@code cursor} is closed.
+     */
+    public Cursor put(Key key, Ticket ticket, Cursor cursor) {
+        Snapshot snapshot;
+        try {
+            snapshot = Snapshot.copyOf(cursor);
+        } finally {
+            cursor.close();
+        }
+        synchronized (this) {
+            if (ticket.generation == mGeneration
+                    && ticket.locationGeneration == getLocationGeneration(key.locationSetting)) {
+                mSnapshots.put(key, snapshot);
+            }
+        }
+        return snapshot.newCursor();
+    }
+
+    /**
+     * Drops every result for one location.
+     */
+    public synchronized void invalidate(String locationSetting) {
+        mLocationGenerations.put(locationSetting, getLocationGeneration(locationSetting) + 1);
+        Iterator<Key> keys = mSnapshots.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().locationSetting.equals(locationSetting)) {
+                keys.remove();
+            }
+        }
+        mInvalidations++;
+    }
+
+    /**
+     * Drops every result.  Use this when a write can't be narrowed down to its locations.
+     */
+    public synchronized void invalidateAll() {
+        mGeneration++;
+        mSnapshots.clear();
+        mInvalidations++;
+    }
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    public synchronized long getInvalidationCount() {
+        return mInvalidations;
+    }
+
+    public synchronized int size() {
+        return mSnapshots.size();
+    }
+
+    private long getLocationGeneration(String locationSetting) {
+        Long generation = mLocationGenerations.get(locationSetting);
+        return generation == null ? 0 : generation;
+    }
+}
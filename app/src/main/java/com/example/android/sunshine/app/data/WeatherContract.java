@@ -126,10 +126,26 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Query parameter that switches bulkInsert into upsert mode.
+        public static final String PARAM_UPSERT = "upsert";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
 
+        /*
+            A bulkInsert into this uri compares each row with the stored row for the same
+            location and date, and only writes the columns that differ.  It returns the number
+            of rows that changed, and notifies each changed date's uri.
+         */
+        public static Uri buildWeatherUpsertUri() {
+            return CONTENT_URI.buildUpon().appendQueryParameter(PARAM_UPSERT, "true").build();
+        }
+
+        public static boolean isUpsertUri(Uri uri) {
+            return Boolean.parseBoolean(uri.getQueryParameter(PARAM_UPSERT));
+        }
+
         /*
             Student: This is the buildWeatherLocation function you filled in.
          */
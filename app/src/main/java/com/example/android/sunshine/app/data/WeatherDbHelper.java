@@ -15,9 +15,11 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
@@ -27,15 +29,78 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
-    // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    // If you change the database schema, you must increment the database version, and add a
+    // step to MIGRATIONS that brings the previous version up to the new one.
+    static final int DATABASE_VERSION = 3;
+
+    // The oldest version MIGRATIONS can upgrade in place.  Anything older is rebuilt from scratch.
+    static final int OLDEST_MIGRATABLE_VERSION = 2;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Weather is almost always looked up by location first and then by a date or date range,
+    // which the (date, location_id) index behind the UNIQUE constraint can't serve.
+    static final String WEATHER_LOCATION_DATE_INDEX = "weather_location_date";
+
+    static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + WEATHER_LOCATION_DATE_INDEX + " ON " +
+                    WeatherEntry.TABLE_NAME + " (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherEntry.COLUMN_DATE + ");";
+
+    /**
+     * One step of a schema upgrade, from a version to the one right after it.
+     */
+    interface Migration {
+        void migrate(SQLiteDatabase db);
+    }
+
+    // MIGRATIONS[i] upgrades version OLDEST_MIGRATABLE_VERSION + i to the version after it.
+    static final Migration[] MIGRATIONS = {
+            // 2 -> 3: index weather by location, then date
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+                }
+            },
+    };
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
+    /*
+        Write-ahead logging lets the CursorLoaders, widgets and Muzei keep reading, each on a
+        connection of its own, while the sync adapter's bulkInsert transaction is writing.  From
+        Jelly Bean on, this is the place to turn it on; before that, onOpen does.
+
+        The WAL's synchronous mode, checkpoint interval and size limit are left to Android,
+        which tunes them for WAL and applies them to every connection in its pool.
+     */
+    @Override
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        db.enableWriteAheadLogging();
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (db.isReadOnly()) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            enableWriteAheadLogging(db);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void enableWriteAheadLogging(SQLiteDatabase db) {
+        db.enableWriteAheadLogging();
+    }
+
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
         // Create a table to hold locations.  A location consists of the string supplied in the
@@ -81,18 +146,27 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
+        // Upgrade in place, one version at a time, so that the list, the widgets and the watch
+        // keep showing the forecast they had instead of waiting on a full re-sync.
+        // SQLiteOpenHelper already runs this inside a single transaction, so a failing step
+        // leaves the database at the old version.
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION || newVersion > DATABASE_VERSION) {
+            // We don't know how to migrate versions that predate MIGRATIONS.  This database is
+            // only a cache for online data, so for those we discard the data and start over.
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+        for (int version = oldVersion; version < newVersion; version++) {
+            MIGRATIONS[version - OLDEST_MIGRATABLE_VERSION].migrate(sqLiteDatabase);
+        }
     }
 }
@@ -17,25 +17,45 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
 
 public class WeatherProvider extends ContentProvider {
 
+    private static final String LOG_TAG = WeatherProvider.class.getSimpleName();
+
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private final ForecastSnapshotCache mSnapshotCache = new ForecastSnapshotCache();
+
+    // The uris changed so far by the applyBatch running on this thread, if any.  They are
+    // notified once the whole batch has committed.
+    private final ThreadLocal<LinkedHashSet<Uri>> mBatchNotifications =
+            new ThreadLocal<LinkedHashSet<Uri>>();
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
 
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -52,18 +72,18 @@ public class WeatherProvider extends ContentProvider {
     }
 
     //location.location_setting = ?
-    private static final String sLocationSettingSelection =
+    static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
     //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
+    static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
     //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
@@ -83,14 +103,22 @@ public class WeatherProvider extends ContentProvider {
             selection = sLocationSettingWithStartDateSelection;
         }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
-                selection,
-                selectionArgs,
-                null,
-                null,
-                sortOrder
-        );
+        ForecastSnapshotCache.Key key = new ForecastSnapshotCache.Key(
+                locationSetting, startDate, 0, projection, sortOrder);
+        Cursor cached = mSnapshotCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        ForecastSnapshotCache.Ticket ticket = mSnapshotCache.newTicket(locationSetting);
+        return mSnapshotCache.put(key, ticket,
+                sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                ));
     }
 
     private Cursor getWeatherByLocationSettingAndDate(
@@ -98,14 +126,53 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
-                sLocationSettingAndDaySelection,
-                new String[]{locationSetting, Long.toString(date)},
-                null,
-                null,
-                sortOrder
-        );
+        ForecastSnapshotCache.Key key = new ForecastSnapshotCache.Key(
+                locationSetting, 0, date, projection, sortOrder);
+        Cursor cached = mSnapshotCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        ForecastSnapshotCache.Ticket ticket = mSnapshotCache.newTicket(locationSetting);
+        return mSnapshotCache.put(key, ticket,
+                sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                        projection,
+                        sLocationSettingAndDaySelection,
+                        new String[]{locationSetting, Long.toString(date)},
+                        null,
+                        null,
+                        sortOrder
+                ));
+    }
+
+    /*
+        The cache in front of the WEATHER_WITH_LOCATION and WEATHER_WITH_LOCATION_AND_DATE
+        queries.  Anything that writes weather or locations must invalidate it before notifying
+        observers.
+     */
+    ForecastSnapshotCache getSnapshotCache() {
+        return mSnapshotCache;
+    }
+
+    /*
+        Tells observers about a change, or holds it back until the end of the batch this thread
+        is applying.
+     */
+    private void notifyChange(Uri uri) {
+        LinkedHashSet<Uri> batch = mBatchNotifications.get();
+        if (batch != null) {
+            batch.add(uri);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    private void invalidateLocation(SQLiteDatabase db, Long locationId) {
+        String locationSetting = locationId == null ? null : getLocationSetting(db, locationId);
+        if (locationSetting == null) {
+            mSnapshotCache.invalidateAll();
+        } else {
+            mSnapshotCache.invalidate(locationSetting);
+        }
     }
 
     /*
@@ -238,6 +305,7 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                invalidateLocation(db, values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY));
                 break;
             }
             case LOCATION: {
@@ -246,12 +314,14 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                // a location nobody had weather for may have been cached as empty
+                invalidateLocation(db, _id);
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return returnUri;
     }
 
@@ -276,7 +346,9 @@ public class WeatherProvider extends ContentProvider {
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            // the selection could have matched any location
+            mSnapshotCache.invalidateAll();
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
@@ -298,6 +370,10 @@ public class WeatherProvider extends ContentProvider {
 
         switch (match) {
             case WEATHER:
+                if (WeatherContract.WeatherEntry.isUpsertUri(uri)) {
+                    // a single row, so that upserts can go in a batch
+                    return upsertWeather(db, new ContentValues[]{values});
+                }
                 normalizeDate(values);
                 rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
                         selectionArgs);
@@ -310,7 +386,9 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            // the selection could have matched any location
+            mSnapshotCache.invalidateAll();
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
@@ -321,27 +399,352 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
+                if (WeatherContract.WeatherEntry.isUpsertUri(uri)) {
+                    return upsertWeather(db, values);
+                }
                 db.beginTransaction();
                 int returnCount = 0;
+                HashSet<Long> locationIds = new HashSet<Long>();
                 try {
                     for (ContentValues value : values) {
                         normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
-                        }
+                        locationIds.add(value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY));
                     }
+                    returnCount = insertWeatherWithStatement(db, values);
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                for (Long locationId : locationIds) {
+                    invalidateLocation(db, locationId);
+                }
+                notifyChange(uri);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /*
+        Applies the operations in one transaction.  Observers hear about the batch once, after it
+        has committed: on the one uri it changed, or on the whole authority if it changed
+        several.  The sync adapter stores the weather for every location this way.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        LinkedHashSet<Uri> notifications = new LinkedHashSet<Uri>();
+        mBatchNotifications.set(notifications);
+        ContentProviderResult[] results;
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mBatchNotifications.remove();
+        }
+        if (!notifications.isEmpty()) {
+            // a reader may have cached rows between a write and the commit
+            mSnapshotCache.invalidateAll();
+            notifyChange(notifications.size() == 1
+                    ? notifications.iterator().next() : WeatherContract.BASE_CONTENT_URI);
+        }
+        return results;
+    }
+
+    // The columns of a complete weather row, in the order they are bound to sInsertWeatherSql.
+    private static final String[] sInsertWeatherColumns = {
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    //INSERT INTO weather (location_id, date, ...) VALUES (?, ?, ...)
+    private static final String sInsertWeatherSql = buildInsertSql(
+            WeatherContract.WeatherEntry.TABLE_NAME, sInsertWeatherColumns);
+
+    private static String buildInsertSql(String table, String[] columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "" : ", ").append(columns[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(")").toString();
+    }
+
+    /*
+        Inserts weather rows through one compiled statement, instead of having
+        SQLiteDatabase.insert build and compile the same SQL again for every row.  Complete rows
+        are bound column by column; anything else (a missing, null or extra column) goes through
+        db.insert, so the outcome is the same as inserting each row on its own.  Like the table's
+        UNIQUE constraint, a row for an existing date and location replaces it.
+
+        Call this inside a transaction.  Returns the number of rows inserted.
+     */
+    static int insertWeatherWithStatement(SQLiteDatabase db, ContentValues[] values) {
+        SQLiteStatement insert = db.compileStatement(sInsertWeatherSql);
+        int returnCount = 0;
+        try {
+            for (ContentValues value : values) {
+                long _id;
+                if (isCompleteWeatherRow(value)) {
+                    insert.bindLong(1, value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY));
+                    insert.bindLong(2, value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+                    insert.bindLong(3, value.getAsLong(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID));
+                    insert.bindString(4, value.getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC));
+                    insert.bindDouble(5, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP));
+                    insert.bindDouble(6, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP));
+                    insert.bindDouble(7, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_HUMIDITY));
+                    insert.bindDouble(8, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_PRESSURE));
+                    insert.bindDouble(9, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED));
+                    insert.bindDouble(10, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_DEGREES));
+                    try {
+                        _id = insert.executeInsert();
+                    } catch (SQLException e) {
+                        // the same as db.insert: log it and carry on with the next row
+                        Log.e(LOG_TAG, "Error inserting " + value, e);
+                        _id = -1;
+                    }
+                } else {
+                    _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                }
+                if (_id != -1) {
+                    returnCount++;
+                }
+            }
+        } finally {
+            insert.close();
+        }
+        return returnCount;
+    }
+
+    /*
+        The row-at-a-time loop bulkInsert used before insertWeatherWithStatement.  Kept for
+        comparison in the benchmarks.  Call this inside a transaction.
+     */
+    static int insertWeatherWithContentValues(SQLiteDatabase db, ContentValues[] values) {
+        int returnCount = 0;
+        for (ContentValues value : values) {
+            long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+            if (_id != -1) {
+                returnCount++;
+            }
+        }
+        return returnCount;
+    }
+
+    private static boolean isCompleteWeatherRow(ContentValues value) {
+        if (value.size() != sInsertWeatherColumns.length) {
+            return false;
+        }
+        for (String column : sInsertWeatherColumns) {
+            Object columnValue = value.get(column);
+            if (columnValue == null) {
+                return false;
+            }
+            // a string that isn't a number would fail getAsLong/getAsDouble; let SQLite decide
+            if (columnValue instanceof String
+                    && !column.equals(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static final String sLocationIdAndDateRangeSelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " BETWEEN ? AND ? ";
+
+    private static final String sRowIdSelection = WeatherContract.WeatherEntry._ID + " = ? ";
+
+    /*
+        The upsert flavor of bulkInsert.  Each incoming row is compared with the stored row for
+        its location and date: new rows are inserted, changed rows are updated in place (only in
+        the columns that differ, keeping their _id), and identical rows aren't touched.  Instead
+        of one notification for the whole table, each changed date is notified on its own
+        weather/[location]/[date] uri, or the whole location if every one of its dates changed.
+
+        Returns the number of rows inserted or updated.
+     */
+    private int upsertWeather(SQLiteDatabase db, ContentValues[] values) {
+        // incoming rows by location, then by date
+        HashMap<Long, HashMap<Long, ContentValues>> byLocation =
+                new HashMap<Long, HashMap<Long, ContentValues>>();
+        for (ContentValues value : values) {
+            normalizeDate(value);
+            Long locationId = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+            Long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            if (locationId == null || date == null) {
+                throw new IllegalArgumentException("Upserted weather needs a location and a date");
+            }
+            HashMap<Long, ContentValues> byDate = byLocation.get(locationId);
+            if (byDate == null) {
+                byDate = new HashMap<Long, ContentValues>();
+                byLocation.put(locationId, byDate);
+            }
+            byDate.put(date, value);
+        }
+
+        HashMap<Long, ArrayList<Long>> changedDates = new HashMap<Long, ArrayList<Long>>();
+        int returnCount = 0;
+        db.beginTransaction();
+        try {
+            for (Map.Entry<Long, HashMap<Long, ContentValues>> location : byLocation.entrySet()) {
+                HashMap<Long, ContentValues> byDate = location.getValue();
+                ArrayList<Long> changed = new ArrayList<Long>();
+                upsertLocation(db, location.getKey(), byDate, changed);
+                if (!changed.isEmpty()) {
+                    changedDates.put(location.getKey(), changed);
+                    returnCount += changed.size();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        for (Map.Entry<Long, ArrayList<Long>> location : changedDates.entrySet()) {
+            String locationSetting = getLocationSetting(db, location.getKey());
+            if (locationSetting == null) {
+                mSnapshotCache.invalidateAll();
+            } else {
+                mSnapshotCache.invalidate(locationSetting);
+            }
+            if (locationSetting == null) {
+                notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+            } else if (location.getValue().size() == byLocation.get(location.getKey()).size()) {
+                notifyChange(WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting));
+            } else {
+                for (long date : location.getValue()) {
+                    notifyChange(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                            locationSetting, date));
+                }
+            }
+        }
+        return returnCount;
+    }
+
+    private void upsertLocation(SQLiteDatabase db, long locationId,
+                                HashMap<Long, ContentValues> byDate, ArrayList<Long> changed) {
+        long minDate = Long.MAX_VALUE;
+        long maxDate = Long.MIN_VALUE;
+        for (long date : byDate.keySet()) {
+            minDate = Math.min(minDate, date);
+            maxDate = Math.max(maxDate, date);
+        }
+
+        Cursor stored = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                null,
+                sLocationIdAndDateRangeSelection,
+                new String[]{Long.toString(locationId), Long.toString(minDate),
+                        Long.toString(maxDate)},
+                null,
+                null,
+                null);
+        HashSet<Long> seen = new HashSet<Long>();
+        try {
+            int idIndex = stored.getColumnIndex(WeatherContract.WeatherEntry._ID);
+            int dateIndex = stored.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
+            while (stored.moveToNext()) {
+                long date = stored.getLong(dateIndex);
+                ContentValues incoming = byDate.get(date);
+                if (incoming == null) {
+                    continue;
+                }
+                seen.add(date);
+                ContentValues diff = diff(stored, incoming);
+                if (diff.size() > 0) {
+                    db.update(WeatherContract.WeatherEntry.TABLE_NAME, diff, sRowIdSelection,
+                            new String[]{Long.toString(stored.getLong(idIndex))});
+                    changed.add(date);
+                }
+            }
+        } finally {
+            stored.close();
+        }
+
+        for (Map.Entry<Long, ContentValues> day : byDate.entrySet()) {
+            if (!seen.contains(day.getKey())
+                    && db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, day.getValue())
+                            != -1) {
+                changed.add(day.getKey());
+            }
+        }
+    }
+
+    /*
+        Returns the columns of incoming whose values differ from the cursor's current row.
+     */
+    private static ContentValues diff(Cursor stored, ContentValues incoming) {
+        ContentValues diff = new ContentValues();
+        for (Map.Entry<String, Object> column : incoming.valueSet()) {
+            int index = stored.getColumnIndex(column.getKey());
+            Object value = column.getValue();
+            if (index == -1) {
+                // not a column we know how to compare; let the update sort it out
+                putObject(diff, column.getKey(), value);
+                continue;
+            }
+            boolean same;
+            if (value == null) {
+                same = stored.isNull(index);
+            } else if (stored.isNull(index)) {
+                same = false;
+            } else if (value instanceof Number) {
+                same = ((Number) value).doubleValue() == stored.getDouble(index);
+            } else {
+                same = value.toString().equals(stored.getString(index));
+            }
+            if (!same) {
+                putObject(diff, column.getKey(), value);
+            }
+        }
+        return diff;
+    }
+
+    private static void putObject(ContentValues values, String key, Object value) {
+        if (value == null) {
+            values.putNull(key);
+        } else if (value instanceof Double || value instanceof Float) {
+            values.put(key, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            values.put(key, ((Number) value).longValue());
+        } else if (value instanceof byte[]) {
+            values.put(key, (byte[]) value);
+        } else if (value instanceof Boolean) {
+            values.put(key, (Boolean) value);
+        } else {
+            values.put(key, value.toString());
+        }
+    }
+
+    private static String getLocationSetting(SQLiteDatabase db, long locationId) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)},
+                null,
+                null,
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+
+/**
+ * Parses the OpenWeatherMap daily forecast response.
+ *
+ * On Honeycomb and higher the response is pulled token by token straight off the
+ * {@link InputStream}, handing each day to the {@link Callback} as soon as its closing brace
+ * has been read.  Neither the complete response String nor a {@link JSONObject} tree is ever
+ * built, so the heap used by a sync no longer grows with the size of the response.  Older
+ * devices don't have {@link JsonReader} and fall back to {@link #parse(String, Callback)}.
+ */
+public class ForecastJsonParser {
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    static final String OWM_CITY = "city";
+    static final String OWM_CITY_NAME = "name";
+    static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    static final String OWM_LATITUDE = "lat";
+    static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    static final String OWM_LIST = "list";
+
+    static final String OWM_PRESSURE = "pressure";
+    static final String OWM_HUMIDITY = "humidity";
+    static final String OWM_WINDSPEED = "speed";
+    static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    static final String OWM_TEMPERATURE = "temp";
+    static final String OWM_MAX = "max";
+    static final String OWM_MIN = "min";
+
+    static final String OWM_WEATHER = "weather";
+    static final String OWM_DESCRIPTION = "main";
+    static final String OWM_WEATHER_ID = "id";
+
+    static final String OWM_MESSAGE_CODE = "cod";
+
+    /**
+     * Receives the pieces of the forecast as they are parsed.
+     */
+    public interface Callback {
+        /**
+         * Called once with the city the forecast is for.  OWM sends the city ahead of the list
+         * today, but JSON objects are unordered so callers must not rely on that.
+         */
+        void onCity(String cityName, double lat, double lon);
+
+        /**
+         * Called for every day in the forecast, in order.  The values hold every weather column
+         * except {@link WeatherContract.WeatherEntry#COLUMN_LOC_KEY} and
+         * {@link WeatherContract.WeatherEntry#COLUMN_DATE}, which depend on the caller.
+         *
+         * @param dayIndex 0 for the first day of the forecast, 1 for the next and so on.
+         */
+        void onDay(int dayIndex, ContentValues weatherValues);
+    }
+
+    /**
+     * Parses the response using the best parser available on this device.  The stream is left
+     * open, and may still have unread bytes after the JSON; it belongs to the caller.
+     *
+     * @return the "cod" status of the response, {@link HttpURLConnection#HTTP_OK} if the
+     * response didn't carry one.  Parsing stops as soon as an error status is seen.
+     */
+    public static int parse(InputStream in, Callback callback) throws IOException, JSONException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return parseStream(in, callback);
+        }
+        return parse(readFully(in), callback);
+    }
+
+    /**
+     * Streaming parse of the response with a {@link JsonReader}.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    static int parseStream(InputStream in, Callback callback) throws IOException {
+        // Never closed, since that would close the caller's stream under it.
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            int dayIndex = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    int code = reader.nextInt();
+                    if (code != HttpURLConnection.HTTP_OK) {
+                        return code;
+                    }
+                } else if (OWM_CITY.equals(name)) {
+                    readCity(reader, callback);
+                } else if (OWM_LIST.equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        callback.onDay(dayIndex++, readDay(reader));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return HttpURLConnection.HTTP_OK;
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            // JsonReader reports unexpected tokens with unchecked exceptions.  Surface them all
+            // as a malformed body so the caller can flag the server as invalid.
+            throw new MalformedForecastException(e);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readCity(JsonReader reader, Callback callback) throws IOException {
+        String cityName = null;
+        double lat = 0;
+        double lon = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                cityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        lat = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        lon = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (cityName == null) {
+            throw new MalformedForecastException("City without a name");
+        }
+        callback.onCity(cityName, lat, lon);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static ContentValues readDay(JsonReader reader) throws IOException {
+        ContentValues weatherValues = new ContentValues(8);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, reader.nextDouble());
+            } else if (OWM_HUMIDITY.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, reader.nextInt());
+            } else if (OWM_WINDSPEED.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, reader.nextDouble());
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, reader.nextDouble());
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String tempName = reader.nextName();
+                    if (OWM_MAX.equals(tempName)) {
+                        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, reader.nextDouble());
+                    } else if (OWM_MIN.equals(tempName)) {
+                        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, reader.nextDouble());
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Description is in a child array called "weather", which is 1 element long.
+                // That element also contains a weather code.
+                reader.beginArray();
+                boolean first = true;
+                while (reader.hasNext()) {
+                    if (!first || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    first = false;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String weatherName = reader.nextName();
+                        if (OWM_DESCRIPTION.equals(weatherName)) {
+                            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, reader.nextString());
+                        } else if (OWM_WEATHER_ID.equals(weatherName)) {
+                            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, reader.nextInt());
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (weatherValues.size() != 8) {
+            throw new MalformedForecastException("Incomplete day: " + weatherValues);
+        }
+        return weatherValues;
+    }
+
+    /**
+     * Parses a complete response held in memory by building a {@link JSONObject} tree.  This is
+     * the original parser, kept for devices without {@link JsonReader}.
+     *
+     * @return the "cod" status of the response, {@link HttpURLConnection#HTTP_OK} if the
+     * response didn't carry one.
+     */
+    public static int parse(String forecastJsonStr, Callback callback) throws JSONException {
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+
+        // do we have an error?
+        if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
+            int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
+            if (errorCode != HttpURLConnection.HTTP_OK) {
+                return errorCode;
+            }
+        }
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        String cityName = cityJson.getString(OWM_CITY_NAME);
+
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        callback.onCity(cityName,
+                cityCoord.getDouble(OWM_LATITUDE), cityCoord.getDouble(OWM_LONGITUDE));
+
+        for(int i = 0; i < weatherArray.length(); i++) {
+            // Get the JSON object representing the day
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+
+            ContentValues weatherValues = new ContentValues(8);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+                    dayForecast.getDouble(OWM_PRESSURE));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+                    dayForecast.getInt(OWM_HUMIDITY));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+                    dayForecast.getDouble(OWM_WINDSPEED));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES,
+                    dayForecast.getDouble(OWM_WIND_DIRECTION));
+
+            // Description is in a child array called "weather", which is 1 element long.
+            // That element also contains a weather code.
+            JSONObject weatherObject =
+                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+                    weatherObject.getString(OWM_DESCRIPTION));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                    weatherObject.getInt(OWM_WEATHER_ID));
+
+            // Temperatures are in a child object called "temp".  Try not to name variables
+            // "temp" when working with temperature.  It confuses everybody.
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                    temperatureObject.getDouble(OWM_MAX));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+                    temperatureObject.getDouble(OWM_MIN));
+
+            callback.onDay(i, weatherValues);
+        }
+        return HttpURLConnection.HTTP_OK;
+    }
+
+    /**
+     * Reads the whole stream into a String, the way the sync adapter originally did.
+     */
+    static String readFully(InputStream in) throws IOException {
+        InputStreamReader reader = new InputStreamReader(in, "UTF-8");
+        StringBuilder buffer = new StringBuilder();
+        char[] chunk = new char[4096];
+        int read;
+        while ((read = reader.read(chunk)) != -1) {
+            buffer.append(chunk, 0, read);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Thrown when the streamed response doesn't have the shape we expect.  It extends
+     * {@link IOException} so that callers treat it like any other failed read; use
+     * {@link #isMalformed(IOException)} to tell the two apart.
+     */
+    static class MalformedForecastException extends IOException {
+        MalformedForecastException(String detailMessage) {
+            super(detailMessage);
+        }
+
+        MalformedForecastException(Throwable cause) {
+            super(cause.getMessage());
+            initCause(cause);
+        }
+    }
+
+    /**
+     * @return true if the exception means the server sent something we can't parse, rather than
+     * the connection failing.
+     */
+    static boolean isMalformed(IOException e) {
+        return e instanceof MalformedForecastException;
+    }
+
+    private ForecastJsonParser() {
+    }
+}
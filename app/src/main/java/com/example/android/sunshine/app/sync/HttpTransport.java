@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The small HTTP client the sync adapter talks to the weather server through.
+ *
+ * Requests ask for a gzip or deflate encoded body and decode it here, so both the bytes that
+ * crossed the network and the bytes that came out can be counted.  Connections are kept alive:
+ * a {@link Response} is drained and closed rather than disconnected, which hands its socket back
+ * to the platform's connection pool for the next request to the same host.  One transport can
+ * be shared by any number of threads.
+ */
+public class HttpTransport {
+
+    public static final String LOG_TAG = HttpTransport.class.getSimpleName();
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 30 * 1000;
+
+    // A leftover body larger than this isn't worth reading just to save a handshake.
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mWireBytes = new AtomicLong();
+    private final AtomicLong mDecodedBytes = new AtomicLong();
+
+    /**
+     * Byte and timing counters for a single request, available once its {@link Response} has
+     * been closed.
+     */
+    public static class RequestStats {
+        public final String url;
+        public final int responseCode;
+        public final String contentEncoding;
+        // bytes of body received from the network, before decoding
+        public final long wireBytes;
+        // bytes of body handed to the caller, after decoding
+        public final long decodedBytes;
+        // from opening the connection to having the response headers
+        public final long headersMillis;
+        // from opening the connection to closing the response
+        public final long totalMillis;
+
+        RequestStats(String url, int responseCode, String contentEncoding, long wireBytes,
+                     long decodedBytes, long headersMillis, long totalMillis) {
+            this.url = url;
+            this.responseCode = responseCode;
+            this.contentEncoding = contentEncoding;
+            this.wireBytes = wireBytes;
+            this.decodedBytes = decodedBytes;
+            this.headersMillis = headersMillis;
+            this.totalMillis = totalMillis;
+        }
+
+        @Override
+        public String toString() {
+            return responseCode + " " + url + ": " + wireBytes + " bytes on the wire ("
+                    + (contentEncoding != null ? contentEncoding : "identity") + "), "
+                    + decodedBytes + " decoded, headers in " + headersMillis + " ms, done in "
+                    + totalMillis + " ms";
+        }
+    }
+
+    /**
+     * A response whose headers have arrived.  It must always be closed, whether or not the body
+     * was read.
+     */
+    public class Response implements Closeable {
+        private final HttpURLConnection mConnection;
+        private final int mCode;
+        private final long mStartMillis;
+        private final long mHeadersMillis;
+
+        private CountingInputStream mWire;
+        private CountingInputStream mDecoded;
+        private RequestStats mStats;
+
+        Response(HttpURLConnection connection, int code, long startMillis) {
+            mConnection = connection;
+            mCode = code;
+            mStartMillis = startMillis;
+            mHeadersMillis = SystemClock.elapsedRealtime() - startMillis;
+        }
+
+        public int getCode() {
+            return mCode;
+        }
+
+        public String getHeader(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        /**
+         * @return the decoded body, or null if the response has none.
+         */
+        public InputStream getBody() throws IOException {
+            if (mDecoded != null) {
+                return mDecoded;
+            }
+            InputStream raw = mCode >= HttpURLConnection.HTTP_BAD_REQUEST
+                    ? mConnection.getErrorStream() : mConnection.getInputStream();
+            if (raw == null) {
+                return null;
+            }
+            mWire = new CountingInputStream(raw);
+
+            InputStream decoded;
+            String encoding = mConnection.getContentEncoding();
+            if ("gzip".equalsIgnoreCase(encoding)) {
+                decoded = new GZIPInputStream(mWire);
+            } else if ("deflate".equalsIgnoreCase(encoding)) {
+                decoded = new InflaterInputStream(mWire);
+            } else {
+                decoded = mWire;
+            }
+            mDecoded = new CountingInputStream(decoded);
+            return mDecoded;
+        }
+
+        /**
+         * @return the counters of this request, or null if it hasn't been closed yet.
+         */
+        public RequestStats getStats() {
+            return mStats;
+        }
+
+        /**
+         * Finishes the request.  Whatever is left of a small body is read off first, so that the
+         * connection can be reused.
+         */
+        @Override
+        public void close() {
+            if (mStats != null) {
+                return;
+            }
+            boolean reusable = true;
+            try {
+                InputStream wire = mWire;
+                if (wire == null && mCode != HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    getBody();
+                    wire = mWire;
+                }
+                if (wire != null) {
+                    reusable = drain(wire);
+                    wire.close();
+                }
+            } catch (IOException e) {
+                reusable = false;
+            }
+            if (!reusable) {
+                // Don't let a half-read socket go back into the pool.
+                mConnection.disconnect();
+            }
+
+            long wireBytes = mWire != null ? mWire.getCount() : 0;
+            long decodedBytes = mDecoded != null ? mDecoded.getCount() : 0;
+            mStats = new RequestStats(mConnection.getURL().toString(), mCode,
+                    mConnection.getContentEncoding(), wireBytes, decodedBytes, mHeadersMillis,
+                    SystemClock.elapsedRealtime() - mStartMillis);
+            mWireBytes.addAndGet(wireBytes);
+            mDecodedBytes.addAndGet(decodedBytes);
+            Log.v(LOG_TAG, mStats.toString());
+        }
+    }
+
+    /**
+     * Sends a GET request and waits for the response headers.
+     *
+     * @param headers extra request headers, or null.
+     */
+    public Response get(URL url, Map<String, String> headers) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod("GET");
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            // Asking for an encoding ourselves turns off the platform's transparent gzip, which
+            // would otherwise hide the compressed size from us.
+            connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+            int code = connection.getResponseCode();
+            mRequestCount.incrementAndGet();
+            return new Response(connection, code, start);
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of requests that got a response.
+     */
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * @return the body bytes received from the network by every closed response.
+     */
+    public long getWireBytes() {
+        return mWireBytes.get();
+    }
+
+    /**
+     * @return the body bytes handed out by every closed response, after decoding.
+     */
+    public long getDecodedBytes() {
+        return mDecodedBytes.get();
+    }
+
+    /**
+     * @return true if the end of the stream was reached.
+     */
+    private static boolean drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[4096];
+        int drained = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            drained += read;
+            if (drained > MAX_DRAIN_BYTES) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long byteCount) throws IOException {
+            long skipped = super.skip(byteCount);
+            mCount += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -7,11 +7,13 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
@@ -22,6 +24,8 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.RemoteException;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
@@ -33,24 +37,32 @@ import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+import com.example.android.sunshine.app.wear.WearPublisherService;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.Vector;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
@@ -77,6 +89,20 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     private static final int INDEX_MIN_TEMP = 2;
     private static final int INDEX_SHORT_DESC = 3;
 
+    private static final String[] SAVED_LOCATION_PROJECTION = new String[] {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_SAVED_LOCATION_ID = 0;
+    private static final int INDEX_SAVED_LOCATION_SETTING = 1;
+
+    // Upper bound on concurrent downloads when syncing all saved locations.
+    private static final int MAX_PARALLEL_FETCHES = 4;
+
+    private static volatile SyncMetrics sLastSyncMetrics;
+
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
     public @interface LocationStatus {}
@@ -87,22 +113,154 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
+    private final SyncValidatorStore mValidatorStore;
+    private final HttpTransport mTransport = new HttpTransport();
+
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
+        mValidatorStore = new SyncValidatorStore(context);
     }
 
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
-        String locationQuery = Utility.getPreferredLocation(getContext());
+        String preferredLocation = Utility.getPreferredLocation(getContext());
+
+        // The preferred location always comes first.  In multi-location mode every other
+        // location we have saved is refreshed along with it.
+        LinkedHashMap<String, Long> locations = new LinkedHashMap<String, Long>();
+        locations.put(preferredLocation, null);
+        loadSavedLocations(locations, isSyncAllLocationsEnabled(getContext()));
+
+        // Every location is dated from the same day, which also decides whether the validators
+        // of the last sync still apply.
+        int julianStartDay = getJulianStartDay();
+
+        SyncMetrics metrics = new SyncMetrics();
+        List<LocationForecast> forecasts = fetchForecasts(locations, julianStartDay, metrics);
+
+        LocationForecast preferred = forecasts.get(0);
+        if (preferred.status != LOCATION_STATUS_OK) {
+            setLocationStatus(getContext(), preferred.status);
+        }
+        storeWeather(forecasts, locations, julianStartDay);
+
+        metrics.finish();
+        sLastSyncMetrics = metrics;
+        Log.d(LOG_TAG, metrics.toString());
+    }
+
+    /**
+     * Fills in the row ids of the locations in {@code locations} that are already in the
+     * database.
+     *
+     * @param addAll true to also add every other saved location.
+     */
+    private void loadSavedLocations(LinkedHashMap<String, Long> locations, boolean addAll) {
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                SAVED_LOCATION_PROJECTION,
+                null,
+                null,
+                null);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                String locationSetting = cursor.getString(INDEX_SAVED_LOCATION_SETTING);
+                if (addAll || locations.containsKey(locationSetting)) {
+                    locations.put(locationSetting, cursor.getLong(INDEX_SAVED_LOCATION_ID));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Fetches and parses the forecast for every location.  A single location is fetched on the
+     * sync thread; several are fetched concurrently on a bounded pool.
+     *
+     * @param locationIds the locations to fetch, mapped to their row id if they have one.
+     * @return one result per location, in the order of {@code locationIds}.
+     */
+    private List<LocationForecast> fetchForecasts(final Map<String, Long> locationIds,
+                                                  final int julianStartDay,
+                                                  final SyncMetrics metrics) {
+        Collection<String> locationSettings = locationIds.keySet();
+        ArrayList<LocationForecast> forecasts =
+                new ArrayList<LocationForecast>(locationSettings.size());
+
+        if (locationSettings.size() == 1) {
+            String locationSetting = locationSettings.iterator().next();
+            LocationForecast forecast = fetchForecast(locationSetting,
+                    locationIds.get(locationSetting) != null, julianStartDay);
+            metrics.record(forecast);
+            forecasts.add(forecast);
+            return forecasts;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(MAX_PARALLEL_FETCHES, locationSettings.size()));
+        try {
+            ArrayList<Future<LocationForecast>> futures =
+                    new ArrayList<Future<LocationForecast>>(locationSettings.size());
+            for (final String locationSetting : locationSettings) {
+                futures.add(executor.submit(new Callable<LocationForecast>() {
+                    @Override
+                    public LocationForecast call() {
+                        LocationForecast forecast = fetchForecast(locationSetting,
+                                locationIds.get(locationSetting) != null, julianStartDay);
+                        metrics.record(forecast);
+                        return forecast;
+                    }
+                }));
+            }
+
+            Iterator<String> settings = locationSettings.iterator();
+            for (Future<LocationForecast> future : futures) {
+                String locationSetting = settings.next();
+                LocationForecast forecast;
+                try {
+                    forecast = future.get();
+                } catch (InterruptedException e) {
+                    // The sync has been cancelled.  Don't wait on the rest.
+                    Log.w(LOG_TAG, "Sync interrupted while fetching " + locationSetting);
+                    Thread.currentThread().interrupt();
+                    forecast = new LocationForecast(locationSetting);
+                    forecast.status = LOCATION_STATUS_UNKNOWN;
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Error fetching " + locationSetting, e.getCause());
+                    forecast = new LocationForecast(locationSetting);
+                    forecast.status = LOCATION_STATUS_SERVER_DOWN;
+                }
+                forecasts.add(forecast);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return forecasts;
+    }
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
+    /**
+     * Downloads and parses the forecast for a single location.  This never throws; any failure
+     * is reported through {@link LocationForecast#status}.  It is safe to call from several
+     * threads at once.
+     *
+     * If the location is already stored and the server says (with a 304) or shows (with a
+     * byte-identical body) that nothing changed since the last sync today, the forecast is
+     * flagged {@link LocationForecast#unchanged} and has no days to write.
+     *
+     * @param stored true if the location already has rows in the database.
+     */
+    LocationForecast fetchForecast(String locationQuery, boolean stored, int julianStartDay) {
+        LocationForecast forecast = new LocationForecast(locationQuery);
+        long start = SystemClock.elapsedRealtime();
 
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+        // This needs to be declared outside the try/catch
+        // so that it can be closed in the finally block.
+        HttpTransport.Response response = null;
 
         String format = "json";
         String units = "metric";
@@ -130,232 +288,264 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
             URL url = new URL(builtUri.toString());
 
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
+            // Send the request to OpenWeatherMap
+            SyncValidatorStore.Validators previous = stored
+                    ? mValidatorStore.get(locationQuery, julianStartDay) : null;
+            response = mTransport.get(url, previous != null ? previous.toHeaders() : null);
+
+            int code = response.getCode();
+            if (previous != null && code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                forecast.status = LOCATION_STATUS_OK;
+                forecast.unchanged = true;
+                return forecast;
+            } else if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+                forecast.status = LOCATION_STATUS_INVALID;
+                return forecast;
+            } else if (code != HttpURLConnection.HTTP_OK) {
+                forecast.status = LOCATION_STATUS_SERVER_DOWN;
+                return forecast;
+            }
 
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
+            InputStream inputStream = response.getBody();
             if (inputStream == null) {
                 // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
+                forecast.status = LOCATION_STATUS_UNKNOWN;
+                return forecast;
             }
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+            // Digest the body while it streams through the parser, so it is never held whole.
+            // The digest is only known once the body has been read, so an unchanged body is
+            // still parsed; what it skips is the write and the notifications that follow.
+            // An empty body fails the parse with an EOFException, which ends up flagging the
+            // server as down, same as before.
+            DigestInputStream digestStream = SyncValidatorStore.newDigestStream(inputStream);
+            int status = ForecastJsonParser.parse(
+                    digestStream != null ? digestStream : inputStream, forecast);
+            String bodyDigest = null;
+            if (digestStream != null && status == HttpURLConnection.HTTP_OK) {
+                bodyDigest = SyncValidatorStore.finishDigest(digestStream);
+                // A byte-identical body has nothing new to write.
+                if (previous != null && bodyDigest.equals(previous.bodyDigest)) {
+                    forecast.days.clear();
+                    forecast.status = LOCATION_STATUS_OK;
+                    forecast.unchanged = true;
+                    return forecast;
+                }
+            }
+            forecast.validators = new SyncValidatorStore.Validators(
+                    response.getHeader("ETag"),
+                    response.getHeader("Last-Modified"),
+                    bodyDigest,
+                    julianStartDay);
+
+            switch (status) {
+                case HttpURLConnection.HTTP_OK:
+                    forecast.status = forecast.cityName != null
+                            ? LOCATION_STATUS_OK : LOCATION_STATUS_SERVER_INVALID;
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    forecast.status = LOCATION_STATUS_INVALID;
+                    break;
+                default:
+                    forecast.status = LOCATION_STATUS_SERVER_DOWN;
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+            if (ForecastJsonParser.isMalformed(e)) {
+                forecast.status = LOCATION_STATUS_SERVER_INVALID;
+            } else {
+                // If the code didn't successfully get the weather data, there's no point in
+                // attempting to parse it.
+                forecast.status = LOCATION_STATUS_SERVER_DOWN;
+            }
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            forecast.status = LOCATION_STATUS_SERVER_INVALID;
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
+            if (response != null) {
+                // Closing rather than disconnecting leaves the connection open for the next
+                // location.
+                response.close();
+                forecast.requestStats = response.getStats();
             }
+            forecast.fetchMillis = SystemClock.elapsedRealtime() - start;
         }
-        return;
+        return forecast;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * The result of fetching a single location.  It collects the pieces of the forecast handed
+     * out by {@link ForecastJsonParser}; each day is kept as the small {@link ContentValues}
+     * that will be written to the database, never as JSON.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
+    static class LocationForecast implements ForecastJsonParser.Callback {
+        final String locationSetting;
+        @LocationStatus int status = LOCATION_STATUS_UNKNOWN;
+        long fetchMillis;
+
+        // true when the stored forecast is still current and there is nothing to write.
+        boolean unchanged;
+        // to be remembered once this forecast has been stored.
+        SyncValidatorStore.Validators validators;
+        // null if the request never got a response.
+        HttpTransport.RequestStats requestStats;
+
+        String cityName;
+        double cityLatitude;
+        double cityLongitude;
+        final ArrayList<ContentValues> days = new ArrayList<ContentValues>(16);
+
+        LocationForecast(String locationSetting) {
+            this.locationSetting = locationSetting;
+        }
 
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            this.cityName = cityName;
+            cityLatitude = lat;
+            cityLongitude = lon;
+        }
 
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
+        @Override
+        public void onDay(int dayIndex, ContentValues weatherValues) {
+            days.add(weatherValues);
+        }
+    }
 
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
+    /**
+     * Dates every successfully fetched day and writes all of them, along with any new location
+     * and the removal of days gone by, in a single applyBatch, so that the whole sync is one
+     * provider transaction and one change notification.
+     *
+     * @param locationIds location rows we already know about, by location setting.
+     */
+    private void storeWeather(List<LocationForecast> forecasts, Map<String, Long> locationIds,
+                              int julianStartDay) {
+        // now we work exclusively in UTC
+        Time dayTime = new Time();
+
+        ArrayList<ContentProviderOperation> ops = new ArrayList<ContentProviderOperation>();
+        int fetched = 0;
+        for (LocationForecast forecast : forecasts) {
+            if (forecast.status != LOCATION_STATUS_OK || forecast.unchanged) {
+                continue;
+            }
+            // A new location is inserted first in the batch and its rows refer back to it.
+            Long knownId = locationIds.get(forecast.locationSetting);
+            int locationOp = -1;
+            if (knownId == null) {
+                locationOp = ops.size();
+                ops.add(ContentProviderOperation
+                        .newInsert(WeatherContract.LocationEntry.CONTENT_URI)
+                        .withValue(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                                forecast.locationSetting)
+                        .withValue(WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+                                forecast.cityName)
+                        .withValue(WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+                                forecast.cityLatitude)
+                        .withValue(WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+                                forecast.cityLongitude)
+                        .build());
+            }
 
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
+            for (int i = 0; i < forecast.days.size(); i++) {
+                ContentValues weatherValues = forecast.days.get(i);
+                // Cheating to convert this to UTC time, which is what we want anyhow
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                        dayTime.setJulianDay(julianStartDay + i));
+                // an update of the upsert uri writes only the columns that actually changed
+                ContentProviderOperation.Builder upsert = ContentProviderOperation
+                        .newUpdate(WeatherContract.WeatherEntry.buildWeatherUpsertUri())
+                        .withValues(weatherValues);
+                if (knownId != null) {
+                    upsert.withValue(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, knownId);
+                } else {
+                    upsert.withValueBackReference(WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                            locationOp);
+                }
+                ops.add(upsert.build());
+                fetched++;
+            }
+        }
 
-        final String OWM_MESSAGE_CODE = "cod";
+        // delete old data so we don't build up an endless history, even on a sync that
+        // brought nothing new
+        ops.add(ContentProviderOperation.newDelete(WeatherContract.WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))})
+                .build());
 
+        int changed = 0;
         try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
+            ContentProviderResult[] results = getContext().getContentResolver().applyBatch(
+                    WeatherContract.CONTENT_AUTHORITY, ops);
+            for (int i = 0; i < results.length - 1; i++) {
+                if (results[i].count != null) {
+                    changed += results[i].count;
                 }
             }
+        } catch (RemoteException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            return;
+        } catch (OperationApplicationException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            return;
+        }
+        if ( changed > 0 ) {
+            updateWidgets();
+            updateMuzei();
+            updateWear();
+            notifyWeather();
+        }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
+        // Only now that the rows are in can the next sync trust these validators.
+        for (LocationForecast forecast : forecasts) {
+            if (forecast.status == LOCATION_STATUS_OK && forecast.validators != null) {
+                mValidatorStore.put(forecast.locationSetting, forecast.validators);
+            }
+        }
+        Log.d(LOG_TAG, "Sync Complete. " + fetched + " Fetched, " + changed + " Changed");
+        if (forecasts.get(0).status == LOCATION_STATUS_OK) {
+            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+        }
+    }
 
-                double high;
-                double low;
+    /**
+     * @return the julian day, in local time, that the first day of a forecast fetched now
+     * belongs to.
+     */
+    private static int getJulianStartDay() {
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for, which means that we need to know the GMT offset to translate this data
+        // properly.
 
-                String description;
-                int weatherId;
+        // Since this data is also sent in-order and the first day is always the
+        // current day, we're going to take advantage of that to get a nice
+        // normalized UTC date for all of our weather.
 
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
+        Time dayTime = new Time();
+        dayTime.setToNow();
 
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
-            }
+        // we start at the day returned by local time. Otherwise this is a mess.
+        return Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+    }
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
-
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
-            }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+    /**
+     * @return the metrics of the most recent sync in this process, or null if there hasn't
+     * been one yet.
+     */
+    public static SyncMetrics getLastSyncMetrics() {
+        return sLastSyncMetrics;
+    }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
-        }
+    /**
+     * @return true if every saved location should be synced, not just the preferred one.
+     */
+    public static boolean isSyncAllLocationsEnabled(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getBoolean(context.getString(R.string.pref_sync_all_locations_key),
+                Boolean.parseBoolean(context.getString(R.string.pref_sync_all_locations_default)));
     }
 
     private void updateWidgets() {
@@ -376,6 +566,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
+    private void updateWear() {
+        // The publisher debounces and skips the push if the watch already has this forecast
+        WearPublisherService.publish(getContext());
+    }
+
     private void notifyWeather() {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
@@ -391,7 +586,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
+                SettingsSnapshot settings = SettingsSnapshot.get(context);
+                String locationQuery = settings.location;
 
                 Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
 
@@ -407,7 +603,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
                     int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
+                    String artUrl = settings.getArtUrl(weatherId);
 
                     // On Honeycomb and higher devices, we can retrieve the size of the large icon
                     // Prior to that, we use a fixed size
@@ -438,8 +634,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     // Define the text of the forecast.
                     String contentText = String.format(context.getString(R.string.format_notification),
                             desc,
-                            Utility.formatTemperature(context, high),
-                            Utility.formatTemperature(context, low));
+                            Utility.formatTemperature(context, high, settings.metric),
+                            Utility.formatTemperature(context, low, settings.metric));
 
                     // NotificationCompatBuilder is a very convenient way to build backward-compatible
                     // notifications.  Just throw in some data.
@@ -483,56 +679,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
-    /**
-     * Helper method to handle insertion of a new location in the weather database.
-     *
-     * @param locationSetting The location string used to request updates from the server.
-     * @param cityName A human-readable city name, e.g "Mountain View"
-     * @param lat the latitude of the city
-     * @param lon the longitude of the city
-     * @return the row ID of the added location.
-     */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
-        }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
-    }
-
     /**
      * Helper method to schedule the sync adapter periodic execution
      */
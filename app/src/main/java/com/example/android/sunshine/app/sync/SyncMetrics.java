@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.os.SystemClock;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timings for a single sync: how long each location took to fetch and parse, and how long the
+ * whole sync took end to end.  Locations may be recorded from several fetch threads at once.
+ */
+public class SyncMetrics {
+
+    private final long mStartMillis = SystemClock.elapsedRealtime();
+    private long mTotalMillis = -1;
+
+    private final Map<String, Long> mLocationMillis = new LinkedHashMap<String, Long>();
+    private final Map<String, Integer> mLocationStatus = new LinkedHashMap<String, Integer>();
+    private long mWireBytes;
+    private long mDecodedBytes;
+
+    synchronized void record(SunshineSyncAdapter.LocationForecast forecast) {
+        mLocationMillis.put(forecast.locationSetting, forecast.fetchMillis);
+        mLocationStatus.put(forecast.locationSetting, forecast.status);
+        if (forecast.requestStats != null) {
+            mWireBytes += forecast.requestStats.wireBytes;
+            mDecodedBytes += forecast.requestStats.decodedBytes;
+        }
+    }
+
+    synchronized void finish() {
+        mTotalMillis = SystemClock.elapsedRealtime() - mStartMillis;
+    }
+
+    /**
+     * @return the fetch and parse time of each location synced, in milliseconds.
+     */
+    public synchronized Map<String, Long> getLocationMillis() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, Long>(mLocationMillis));
+    }
+
+    /**
+     * @return the wall clock time of the whole sync in milliseconds, or -1 if it is still
+     * running.
+     */
+    public synchronized long getTotalMillis() {
+        return mTotalMillis;
+    }
+
+    /**
+     * @return the slowest single location in milliseconds.  With parallel fetches this, rather
+     * than the sum, is what bounds the sync.
+     */
+    public synchronized long getMaxLocationMillis() {
+        long max = 0;
+        for (long millis : mLocationMillis.values()) {
+            max = Math.max(max, millis);
+        }
+        return max;
+    }
+
+    /**
+     * @return the response body bytes received from the network, before decoding.
+     */
+    public synchronized long getWireBytes() {
+        return mWireBytes;
+    }
+
+    /**
+     * @return the response body bytes after decoding.
+     */
+    public synchronized long getDecodedBytes() {
+        return mDecodedBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long sum = 0;
+        for (long millis : mLocationMillis.values()) {
+            sum += millis;
+        }
+        StringBuilder builder = new StringBuilder("Synced ")
+                .append(mLocationMillis.size()).append(" location(s) in ")
+                .append(mTotalMillis).append(" ms (fetch total ")
+                .append(sum).append(" ms, slowest ")
+                .append(getMaxLocationMillis()).append(" ms, ")
+                .append(mWireBytes).append(" bytes received, ")
+                .append(mDecodedBytes).append(" decoded):");
+        for (Map.Entry<String, Long> entry : mLocationMillis.entrySet()) {
+            builder.append(' ').append(entry.getKey())
+                    .append('=').append(entry.getValue()).append("ms")
+                    .append('/').append(mLocationStatus.get(entry.getKey()));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers, per location setting, what the last stored forecast looked like: the HTTP cache
+ * validators the server sent with it, a digest of the body, and the julian day it was stored
+ * on.  The sync adapter uses these to make conditional requests and to skip work when nothing
+ * has changed.
+ *
+ * Forecast days are dated relative to the day they were fetched, so validators from an earlier
+ * day are never used: the same body means different rows tomorrow.
+ */
+public class SyncValidatorStore {
+
+    private static final String PREFS_NAME = "sync_validators";
+
+    private static final String KEY_ETAG = "etag:";
+    private static final String KEY_LAST_MODIFIED = "last_modified:";
+    private static final String KEY_DIGEST = "digest:";
+    private static final String KEY_JULIAN_DAY = "julian_day:";
+
+    private static final String DIGEST_ALGORITHM = "MD5";
+
+    /**
+     * What we know about the forecast last stored for a location.
+     */
+    public static class Validators {
+        public final String eTag;
+        public final String lastModified;
+        public final String bodyDigest;
+        public final int julianDay;
+
+        public Validators(String eTag, String lastModified, String bodyDigest, int julianDay) {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.bodyDigest = bodyDigest;
+            this.julianDay = julianDay;
+        }
+
+        /**
+         * @return the If-None-Match / If-Modified-Since headers for a conditional request.
+         */
+        public Map<String, String> toHeaders() {
+            HashMap<String, String> headers = new HashMap<String, String>(2);
+            if (eTag != null) {
+                headers.put("If-None-Match", eTag);
+            }
+            if (lastModified != null) {
+                headers.put("If-Modified-Since", lastModified);
+            }
+            return headers;
+        }
+    }
+
+    private final SharedPreferences mPrefs;
+
+    public SyncValidatorStore(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return the validators stored for {@code locationSetting} on {@code julianDay}, or null
+     * if there are none for that day.
+     */
+    public Validators get(String locationSetting, int julianDay) {
+        if (mPrefs.getInt(KEY_JULIAN_DAY + locationSetting, -1) != julianDay) {
+            return null;
+        }
+        return new Validators(
+                mPrefs.getString(KEY_ETAG + locationSetting, null),
+                mPrefs.getString(KEY_LAST_MODIFIED + locationSetting, null),
+                mPrefs.getString(KEY_DIGEST + locationSetting, null),
+                julianDay);
+    }
+
+    /**
+     * Records the validators of a forecast.  Only call this once the forecast has actually been
+     * written to the database.
+     */
+    public void put(String locationSetting, Validators validators) {
+        mPrefs.edit()
+                .putString(KEY_ETAG + locationSetting, validators.eTag)
+                .putString(KEY_LAST_MODIFIED + locationSetting, validators.lastModified)
+                .putString(KEY_DIGEST + locationSetting, validators.bodyDigest)
+                .putInt(KEY_JULIAN_DAY + locationSetting, validators.julianDay)
+                .apply();
+    }
+
+    /**
+     * Forgets everything, so the next sync of every location is unconditional.
+     */
+    public void clear() {
+        mPrefs.edit().clear().apply();
+    }
+
+    /**
+     * @return a digest of a response body, suitable for {@link Validators#bodyDigest}.
+     */
+    public static String digest(byte[] body, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            digest.update(body, 0, length);
+            return Base64.encodeToString(digest.digest(), Base64.NO_WRAP);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android release ships MD5; without it we simply never skip.
+            return null;
+        }
+    }
+
+    /**
+     * Wraps a response body so that it is digested as it is read.
+     *
+     * @return the wrapped body, or null if there is no digest algorithm to use.
+     */
+    public static DigestInputStream newDigestStream(InputStream body) {
+        try {
+            return new DigestInputStream(body, MessageDigest.getInstance(DIGEST_ALGORITHM));
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads whatever is left of a body wrapped by {@link #newDigestStream(InputStream)}.
+     *
+     * @return the digest of the whole body, the same as {@link #digest(byte[], int)} gives.
+     */
+    public static String finishDigest(DigestInputStream body) throws IOException {
+        // A parser can stop reading at the end of the JSON, before any trailing whitespace.
+        byte[] buffer = new byte[512];
+        while (body.read(buffer) != -1) {
+            // Only the digest wants these bytes.
+        }
+        return Base64.encodeToString(body.getMessageDigest().digest(), Base64.NO_WRAP);
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.example.android.sunshine.app.sync.SyncValidatorStore;
+import com.example.android.sunshine.shared.WeatherPayload;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decides which days of forecast are worth sending to the watch.
+ *
+ * Each day is a DataItem of its own, holding a one-day {@link WeatherPayload}, so a sync that
+ * changes tomorrow's weather only sends tomorrow.  Every putDataItem wakes the watch's radio
+ * and its watch face, so a day is only sent if it differs from what the watch last received.
+ * That is remembered as a digest per day in shared preferences, so it survives the publishing
+ * service and the process being stopped.  The digest leaves out when the forecast was produced:
+ * a sync that brings back the same weather is not a change.  Days that have passed are deleted
+ * from the watch.
+ *
+ * Changes are coalesced: the first one starts a window of {@link #getCoalesceWindowMillis()},
+ * and only the latest forecast offered by the end of it is sent.
+ */
+public class WearDataPublisher {
+
+    private static final String PREFS_NAME = "wear_publisher";
+
+    // Followed by the julian day.
+    private static final String KEY_DAY_DIGEST = "digest:";
+    private static final String KEY_PUBLISHED = "published";
+    private static final String KEY_DAYS_PUBLISHED = "days_published";
+    private static final String KEY_SUPPRESSED = "suppressed";
+    private static final String KEY_COALESCED = "coalesced";
+    private static final String KEY_LEGACY_ITEM_DELETED = "legacy_item_deleted";
+
+    /**
+     * Where the days that need sending go.
+     */
+    public interface Sink {
+        /**
+         * @return whether the watch will receive the day.  If not, the forecast stays pending
+         * and the day is sent by the next flush.
+         */
+        boolean putDay(int julianDay, byte[] data);
+
+        /**
+         * @return whether the day is gone from the watch.
+         */
+        boolean deleteDay(int julianDay);
+    }
+
+    private final SharedPreferences mPrefs;
+    private final long mCoalesceWindowMillis;
+
+    // Guarded by this.
+    private WeatherPayload mPending;
+
+    public WearDataPublisher(Context context, long coalesceWindowMillis) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mCoalesceWindowMillis = coalesceWindowMillis;
+    }
+
+    public long getCoalesceWindowMillis() {
+        return mCoalesceWindowMillis;
+    }
+
+    /**
+     * Queues a forecast to be sent, replacing any that is already waiting.
+     *
+     * @return true if this starts a new window, in which case the caller should call
+     * {@link #flush(Sink)} once it has passed.
+     */
+    public synchronized boolean offer(WeatherPayload payload) {
+        if (mPending == null) {
+            if (getChangedDays(payload).isEmpty() && getPastDays(payload).isEmpty()) {
+                increment(KEY_SUPPRESSED);
+                return false;
+            }
+            mPending = payload;
+            return true;
+        }
+        mPending = payload;
+        increment(KEY_COALESCED);
+        return false;
+    }
+
+    public synchronized boolean hasPending() {
+        return mPending != null;
+    }
+
+    /**
+     * Drops the forecast waiting to be sent, if any.  Its days are still sent with the next
+     * forecast offered, since the watch was never recorded as having them.
+     */
+    public synchronized void discardPending() {
+        mPending = null;
+    }
+
+    /**
+     * Sends the days of the forecast waiting at the end of a window that the watch doesn't
+     * already have, and deletes the days before it.  If the sink fails for any day, the
+     * forecast stays pending, unless a newer one has been offered meanwhile, so that the caller
+     * can flush again later.
+     *
+     * @return whether any day was sent.
+     */
+    public boolean flush(Sink sink) {
+        WeatherPayload payload;
+        synchronized (this) {
+            payload = mPending;
+            mPending = null;
+        }
+        if (payload == null) {
+            return false;
+        }
+
+        List<WeatherPayload> changedDays = getChangedDays(payload);
+        List<Integer> pastDays = getPastDays(payload);
+        if (changedDays.isEmpty() && pastDays.isEmpty()) {
+            // Changed back within the window.
+            increment(KEY_SUPPRESSED);
+            return false;
+        }
+
+        int sent = 0;
+        boolean failed = false;
+        SharedPreferences.Editor editor = mPrefs.edit();
+        for (WeatherPayload day : changedDays) {
+            if (sink.putDay(day.startJulianDay, day.encode())) {
+                editor.putString(KEY_DAY_DIGEST + day.startJulianDay, digest(day));
+                sent++;
+            } else {
+                failed = true;
+            }
+        }
+        for (int julianDay : pastDays) {
+            if (sink.deleteDay(julianDay)) {
+                editor.remove(KEY_DAY_DIGEST + julianDay);
+            } else {
+                failed = true;
+            }
+        }
+
+        synchronized (this) {
+            if (failed && mPending == null) {
+                // The days that did go out are recorded, so a retry only sends the rest.
+                mPending = payload;
+            }
+            if (sent > 0) {
+                editor.putInt(KEY_PUBLISHED, getPublishedCount() + 1)
+                        .putInt(KEY_DAYS_PUBLISHED, getDaysPublishedCount() + sent);
+            }
+            editor.apply();
+        }
+        return sent > 0;
+    }
+
+    /**
+     * Forgets what the watch was last sent, so every day of the next forecast offered is sent.
+     */
+    public synchronized void forget() {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        for (String key : mPrefs.getAll().keySet()) {
+            if (key.startsWith(KEY_DAY_DIGEST)) {
+                editor.remove(key);
+            }
+        }
+        editor.apply();
+    }
+
+    /** @return how many forecasts have been sent to the watch, in one or more days each. */
+    public int getPublishedCount() {
+        return mPrefs.getInt(KEY_PUBLISHED, 0);
+    }
+
+    /** @return how many days of forecast have been sent to the watch. */
+    public int getDaysPublishedCount() {
+        return mPrefs.getInt(KEY_DAYS_PUBLISHED, 0);
+    }
+
+    /** @return how many forecasts weren't sent because the watch already had them. */
+    public int getSuppressedCount() {
+        return mPrefs.getInt(KEY_SUPPRESSED, 0);
+    }
+
+    /** @return how many forecasts were replaced by a newer one before being sent. */
+    public int getCoalescedCount() {
+        return mPrefs.getInt(KEY_COALESCED, 0);
+    }
+
+    /** @return whether the single item older versions of the app sent has been deleted. */
+    public boolean isLegacyItemDeleted() {
+        return mPrefs.getBoolean(KEY_LEGACY_ITEM_DELETED, false);
+    }
+
+    public void setLegacyItemDeleted() {
+        mPrefs.edit().putBoolean(KEY_LEGACY_ITEM_DELETED, true).apply();
+    }
+
+    private synchronized void increment(String key) {
+        mPrefs.edit().putInt(key, mPrefs.getInt(key, 0) + 1).apply();
+    }
+
+    /**
+     * @return the days of the payload, as one-day payloads, that differ from what the watch
+     * was last sent.
+     */
+    private List<WeatherPayload> getChangedDays(WeatherPayload payload) {
+        List<WeatherPayload> changed = new ArrayList<WeatherPayload>();
+        int julianDay = payload.startJulianDay;
+        for (WeatherPayload.Day day : payload.getDays()) {
+            WeatherPayload single = new WeatherPayload(payload.metric, payload.timestampMillis,
+                    julianDay, Collections.singletonList(day));
+            String digest = digest(single);
+            if (digest == null
+                    || !digest.equals(mPrefs.getString(KEY_DAY_DIGEST + julianDay, null))) {
+                changed.add(single);
+            }
+            julianDay++;
+        }
+        return changed;
+    }
+
+    /**
+     * @return the days sent to the watch that are before the start of the payload.
+     */
+    private List<Integer> getPastDays(WeatherPayload payload) {
+        List<Integer> past = new ArrayList<Integer>();
+        for (String key : mPrefs.getAll().keySet()) {
+            if (!key.startsWith(KEY_DAY_DIGEST)) {
+                continue;
+            }
+            try {
+                int julianDay = Integer.parseInt(key.substring(KEY_DAY_DIGEST.length()));
+                if (julianDay < payload.startJulianDay) {
+                    past.add(julianDay);
+                }
+            } catch (NumberFormatException e) {
+                // Not one of ours.
+            }
+        }
+        return past;
+    }
+
+    /**
+     * @return a digest of the forecast the payload carries, ignoring its timestamp.
+     */
+    static String digest(WeatherPayload payload) {
+        byte[] forecast = new WeatherPayload(payload.metric, 0, payload.startJulianDay,
+                payload.getDays()).encode();
+        return SyncValidatorStore.digest(forecast, forecast.length);
+    }
+}
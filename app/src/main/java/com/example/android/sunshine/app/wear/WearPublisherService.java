@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.shared.WeatherPayload;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes the forecast for the preferred location to the watch face.
+ *
+ * Started by the sync adapter whenever the stored weather changes.  A {@link WearDataPublisher}
+ * decides what is actually sent: a burst of changes results in one push, and only the days the
+ * watch doesn't already have are pushed.  All the work, including connecting to Google Play
+ * services, happens on a background thread.
+ */
+public class WearPublisherService extends Service {
+    public final String LOG_TAG = WearPublisherService.class.getSimpleName();
+
+    /**
+     * Where older versions of the app sent the whole forecast as one item.  Each day now has an
+     * item of its own, at {@link #getDayPath(int)}.
+     */
+    public static final String PATH = "/sunshine_data_update";
+
+    // How many days of forecast the watch face is sent.
+    static final int WEAR_FORECAST_DAYS = 7;
+
+    // Changes within this long of the first one are folded into one push.
+    static final long COALESCE_WINDOW_MILLIS = 2000;
+
+    // A push that fails is retried after this long, doubling each time, up to
+    // MAX_FLUSH_ATTEMPTS times.  Whatever is still unsent then goes with the next sync.
+    private static final long FLUSH_RETRY_MILLIS = 30 * 1000;
+    private static final int MAX_FLUSH_ATTEMPTS = 5;
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 30;
+    private static final long PUT_TIMEOUT_SECONDS = 10;
+
+    private static final int MSG_LOAD = 1;
+    private static final int MSG_FLUSH = 2;
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+
+    private HandlerThread mThread;
+    private Handler mHandler;
+    private GoogleApiClient mGoogleApiClient;
+    private WearDataPublisher mPublisher;
+
+    // The id of the latest start request.  Only used on the background thread.
+    private int mLastStartId;
+
+    // Failed pushes of the pending forecast so far.  Only used on the background thread.
+    private int mFlushAttempts;
+
+    /**
+     * Asks for the watch face to be brought up to date.
+     */
+    public static void publish(Context context) {
+        context.startService(new Intent(context, WearPublisherService.class));
+    }
+
+    /**
+     * @return the path of the item holding the forecast for the given julian day.  Must match
+     * the watch face's DigitalWatchFaceUtil.
+     */
+    static String getDayPath(int julianDay) {
+        return PATH + "/" + julianDay;
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mThread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new PublishHandler(mThread.getLooper());
+        mGoogleApiClient = new GoogleApiClient.Builder(this)
+                .addApi(Wearable.API)
+                .build();
+        mPublisher = new WearDataPublisher(this, COALESCE_WINDOW_MILLIS);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        mHandler.sendMessage(mHandler.obtainMessage(MSG_LOAD, startId, 0));
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        mHandler.removeCallbacksAndMessages(null);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mGoogleApiClient.disconnect();
+                mThread.quit();
+            }
+        });
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private final class PublishHandler extends Handler {
+        PublishHandler(Looper looper) {
+            super(looper);
+        }
+
+        @Override
+        public void handleMessage(Message msg) {
+            switch (msg.what) {
+                case MSG_LOAD:
+                    mLastStartId = msg.arg1;
+                    WeatherPayload payload = loadPayload();
+                    if (payload != null && mPublisher.offer(payload)) {
+                        sendEmptyMessageDelayed(MSG_FLUSH, mPublisher.getCoalesceWindowMillis());
+                    }
+                    if (!mPublisher.hasPending()) {
+                        stopSelf(msg.arg1);
+                    }
+                    break;
+                case MSG_FLUSH:
+                    try {
+                        mPublisher.flush(mDataLayerSink);
+                        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+                            Log.d(LOG_TAG, "Wear forecasts: " + mPublisher.getPublishedCount()
+                                    + " published (" + mPublisher.getDaysPublishedCount()
+                                    + " days), " + mPublisher.getSuppressedCount()
+                                    + " suppressed, " + mPublisher.getCoalescedCount()
+                                    + " coalesced");
+                        }
+                    } finally {
+                        if (!mPublisher.hasPending() || !scheduleRetry()) {
+                            mFlushAttempts = 0;
+                            // Only stops if no request has come in since the latest one loaded.
+                            stopSelf(mLastStartId);
+                        }
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Schedules another push of the forecast that failed to go out, backing off each time.
+     *
+     * @return false if it has failed too often, in which case it is dropped.
+     */
+    private boolean scheduleRetry() {
+        if (mFlushAttempts >= MAX_FLUSH_ATTEMPTS) {
+            Log.w(LOG_TAG, "Giving up on the wear forecast after " + mFlushAttempts
+                    + " retries");
+            mPublisher.discardPending();
+            return false;
+        }
+        if (!mHandler.hasMessages(MSG_FLUSH)) {
+            mHandler.sendEmptyMessageDelayed(MSG_FLUSH, FLUSH_RETRY_MILLIS << mFlushAttempts);
+        }
+        mFlushAttempts++;
+        return true;
+    }
+
+    private final WearDataPublisher.Sink mDataLayerSink = new WearDataPublisher.Sink() {
+        @Override
+        public boolean putDay(int julianDay, byte[] data) {
+            if (!connect()) {
+                return false;
+            }
+            PutDataRequest request = PutDataRequest.create(getDayPath(julianDay)).setData(data);
+            DataApi.DataItemResult result = Wearable.DataApi.putDataItem(mGoogleApiClient,
+                    request).await(PUT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (!result.getStatus().isSuccess()) {
+                Log.w(LOG_TAG, "putDataItem failed: " + result.getStatus());
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean deleteDay(int julianDay) {
+            return connect() && delete(getDayPath(julianDay));
+        }
+    };
+
+    /*
+        Connects to Google Play services if need be, and gets rid of the item older versions of
+        the app sent, so the watch face doesn't show it over the per-day ones.
+     */
+    private boolean connect() {
+        if (!mGoogleApiClient.isConnected()) {
+            ConnectionResult result =
+                    mGoogleApiClient.blockingConnect(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (!result.isSuccess()) {
+                Log.w(LOG_TAG, "Couldn't connect to Google Play services: " + result);
+                return false;
+            }
+        }
+        if (!mPublisher.isLegacyItemDeleted() && delete(PATH)) {
+            mPublisher.setLegacyItemDeleted();
+        }
+        return true;
+    }
+
+    private boolean delete(String path) {
+        Uri uri = new Uri.Builder().scheme(PutDataRequest.WEAR_URI_SCHEME).path(path).build();
+        DataApi.DeleteDataItemsResult result = Wearable.DataApi.deleteDataItems(mGoogleApiClient,
+                uri, DataApi.FILTER_LITERAL).await(PUT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!result.getStatus().isSuccess()) {
+            Log.w(LOG_TAG, "deleteDataItems failed for " + path + ": " + result.getStatus());
+            return false;
+        }
+        return true;
+    }
+
+    /*
+        Reads the first days of the forecast for the preferred location.  Returns null if there
+        is nothing to send.
+     */
+    WeatherPayload loadPayload() {
+        String location = Utility.getPreferredLocation(this);
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                location, System.currentTimeMillis());
+        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
+                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (data == null) {
+            return null;
+        }
+        try {
+            if (!data.moveToFirst()) {
+                return null;
+            }
+            Time dayTime = new Time();
+            long firstDate = data.getLong(INDEX_DATE);
+            dayTime.set(firstDate);
+            int startJulianDay = Time.getJulianDay(firstDate, dayTime.gmtoff);
+
+            ArrayList<WeatherPayload.Day> days =
+                    new ArrayList<WeatherPayload.Day>(WEAR_FORECAST_DAYS);
+            do {
+                days.add(new WeatherPayload.Day(data.getInt(INDEX_WEATHER_ID),
+                        data.getDouble(INDEX_MAX_TEMP), data.getDouble(INDEX_MIN_TEMP)));
+            } while (days.size() < WEAR_FORECAST_DAYS && data.moveToNext());
+
+            return new WeatherPayload(Utility.isMetric(this), System.currentTimeMillis(),
+                    startJulianDay, days);
+        } finally {
+            data.close();
+        }
+    }
+}
@@ -15,6 +15,7 @@ import android.widget.RemoteViewsService;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.request.target.Target;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
@@ -94,12 +95,13 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 }
                 RemoteViews views = new RemoteViews(getPackageName(),
                         R.layout.widget_detail_list_item);
+                SettingsSnapshot settings =
+                        SettingsSnapshot.get(DetailWidgetRemoteViewsService.this);
                 int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
                 Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
+                if ( !settings.localGraphics ) {
+                    String weatherArtResourceUrl = settings.getArtUrl(weatherId);
                     try {
                         weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
                                 .load(weatherArtResourceUrl)
@@ -116,10 +118,10 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         DetailWidgetRemoteViewsService.this, dateInMillis, false);
                 double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
                 double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
-                String formattedMaxTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
-                String formattedMinTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, minTemp);
+                String formattedMaxTemperature = Utility.formatTemperature(
+                        DetailWidgetRemoteViewsService.this, maxTemp, settings.metric);
+                String formattedMinTemperature = Utility.formatTemperature(
+                        DetailWidgetRemoteViewsService.this, minTemp, settings.metric);
                 if (weatherArtImage != null) {
                     views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
                 } else {
@@ -134,8 +136,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
 
                 final Intent fillInIntent = new Intent();
-                String locationSetting =
-                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
+                String locationSetting = settings.location;
                 Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
                         locationSetting,
                         dateInMillis);
@@ -31,6 +31,7 @@ import android.widget.RemoteViews;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
@@ -62,7 +63,8 @@ public class TodayWidgetIntentService extends IntentService {
                 TodayWidgetProvider.class));
 
         // Get today's data from the ContentProvider
-        String location = Utility.getPreferredLocation(this);
+        SettingsSnapshot settings = SettingsSnapshot.get(this);
+        String location = settings.location;
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 location, System.currentTimeMillis());
         Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
@@ -81,8 +83,8 @@ public class TodayWidgetIntentService extends IntentService {
         String description = data.getString(INDEX_SHORT_DESC);
         double maxTemp = data.getDouble(INDEX_MAX_TEMP);
         double minTemp = data.getDouble(INDEX_MIN_TEMP);
-        String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
-        String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
+        String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp, settings.metric);
+        String formattedMinTemperature = Utility.formatTemperature(this, minTemp, settings.metric);
         data.close();
 
         // Perform this loop procedure for each Today widget
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import java.util.Arrays;
+
+/**
+ * The kind of weather each OpenWeatherMap condition id is drawn as.  The phone app and the
+ * watch face each index their own icons by kind, so both show the same picture for an id.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherKind {
+
+    /** Condition ids go up to 962; anything larger has no kind. */
+    public static final int MAX_WEATHER_ID = 999;
+
+    public static final int NONE = -1;
+    public static final int STORM = 0;
+    public static final int LIGHT_RAIN = 1;
+    public static final int RAIN = 2;
+    public static final int SNOW = 3;
+    public static final int FOG = 4;
+    public static final int CLEAR = 5;
+    public static final int LIGHT_CLOUDS = 6;
+    public static final int CLOUDS = 7;
+
+    /** How many kinds there are, for arrays indexed by kind. */
+    public static final int COUNT = 8;
+
+    // Indexed by weather id.
+    private static final byte[] sKinds = new byte[MAX_WEATHER_ID + 1];
+
+    static {
+        Arrays.fill(sKinds, (byte) NONE);
+        setKind(200, 232, STORM);
+        setKind(300, 321, LIGHT_RAIN);
+        setKind(500, 504, RAIN);
+        setKind(511, 511, SNOW);
+        setKind(520, 531, RAIN);
+        setKind(600, 622, SNOW);
+        setKind(701, 761, FOG);
+        setKind(781, 781, STORM);
+        setKind(800, 800, CLEAR);
+        setKind(801, 801, LIGHT_CLOUDS);
+        setKind(802, 804, CLOUDS);
+    }
+
+    private WeatherKind() {
+    }
+
+    private static void setKind(int firstId, int lastId, int kind) {
+        Arrays.fill(sKinds, firstId, lastId + 1, (byte) kind);
+    }
+
+    /**
+     * @return the kind of weather for the condition id, or {@link #NONE} if it has none.
+     */
+    public static int get(int weatherId) {
+        return weatherId >= 0 && weatherId <= MAX_WEATHER_ID ? sKinds[weatherId] : NONE;
+    }
+}
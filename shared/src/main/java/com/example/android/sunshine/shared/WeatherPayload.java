@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The forecast as sent from the phone to the watch, in a compact binary form that fits in the
+ * data of a single DataItem.
+ *
+ * Both the phone app and the watch face build against this class, so they always agree on the
+ * bytes.
+ *
+ * Version 1 layout, big-endian:
+ * <pre>
+ *   byte   magic ('S')
+ *   byte   version
+ *   byte   flags (bit 0: show temperatures in metric)
+ *   int    timestamp, in seconds since the epoch
+ *   int    julian day of the first entry; each further entry is the next day
+ *   byte   number of entries
+ *   then, per entry:
+ *   short  weather condition id
+ *   short  high, in tenths of a degree Celsius
+ *   short  low, in tenths of a degree Celsius
+ * </pre>
+ * A week of forecast takes 54 bytes.
+ */
+public final class WeatherPayload {
+    static final byte MAGIC = 'S';
+    public static final byte VERSION = 1;
+
+    public static final int HEADER_SIZE = 12;
+    public static final int DAY_SIZE = 6;
+    public static final int MAX_DAYS = 14;
+
+    private static final int FLAG_METRIC = 1;
+
+    /** Temperatures are sent as fixed-point tenths of a degree. */
+    static final double TEMPERATURE_SCALE = 10.0;
+
+    public static final class Day {
+        public final int weatherId;
+        private final short mHigh;
+        private final short mLow;
+
+        /**
+         * @param high the high temperature, in degrees Celsius.
+         * @param low  the low temperature, in degrees Celsius.
+         */
+        public Day(int weatherId, double high, double low) {
+            this(weatherId, toFixedPoint(high), toFixedPoint(low));
+        }
+
+        Day(int weatherId, short high, short low) {
+            this.weatherId = weatherId;
+            mHigh = high;
+            mLow = low;
+        }
+
+        /** @return the high temperature, in degrees Celsius. */
+        public double getHigh() {
+            return mHigh / TEMPERATURE_SCALE;
+        }
+
+        /** @return the low temperature, in degrees Celsius. */
+        public double getLow() {
+            return mLow / TEMPERATURE_SCALE;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Day)) {
+                return false;
+            }
+            Day other = (Day) o;
+            return weatherId == other.weatherId && mHigh == other.mHigh && mLow == other.mLow;
+        }
+
+        @Override
+        public int hashCode() {
+            return (weatherId * 31 + mHigh) * 31 + mLow;
+        }
+    }
+
+    public final boolean metric;
+    public final long timestampMillis;
+    public final int startJulianDay;
+    private final List<Day> mDays;
+
+    /**
+     * @param timestampMillis when the forecast was produced.  Only whole seconds are kept.
+     * @param days           consecutive days, starting on {@code startJulianDay}.  At most
+     *                       {@link #MAX_DAYS}.
+     */
+    public WeatherPayload(boolean metric, long timestampMillis, int startJulianDay,
+                          List<Day> days) {
+        if (days.size() > MAX_DAYS) {
+            throw new IllegalArgumentException("At most " + MAX_DAYS + " days, not " + days.size());
+        }
+        this.metric = metric;
+        this.timestampMillis = timestampMillis / 1000 * 1000;
+        this.startJulianDay = startJulianDay;
+        mDays = Collections.unmodifiableList(new ArrayList<Day>(days));
+    }
+
+    public List<Day> getDays() {
+        return mDays;
+    }
+
+    /**
+     * @return the entry for the given julian day, or null if the payload doesn't cover it.
+     */
+    public Day getDay(int julianDay) {
+        int index = julianDay - startJulianDay;
+        return index >= 0 && index < mDays.size() ? mDays.get(index) : null;
+    }
+
+    static short toFixedPoint(double degrees) {
+        long value = Math.round(degrees * TEMPERATURE_SCALE);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream(HEADER_SIZE + DAY_SIZE * mDays.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(metric ? FLAG_METRIC : 0);
+            out.writeInt((int) (timestampMillis / 1000));
+            out.writeInt(startJulianDay);
+            out.writeByte(mDays.size());
+            for (Day day : mDays) {
+                out.writeShort(day.weatherId);
+                out.writeShort(day.mHigh);
+                out.writeShort(day.mLow);
+            }
+            out.close();
+        } catch (IOException e) {
+            // Can't happen when writing to memory.
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return whether the data looks like an encoded payload, as opposed to, say, a DataMap.
+     */
+    public static boolean isPayload(byte[] data) {
+        return data != null && data.length >= HEADER_SIZE && data[0] == MAGIC;
+    }
+
+    /**
+     * @throws IOException if the data is truncated, isn't a payload or was written by a newer
+     *                     version of the app.
+     */
+    public static WeatherPayload decode(byte[] data) throws IOException {
+        if (!isPayload(data)) {
+            throw new IOException("Not a weather payload");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        in.readByte();
+        int version = in.readUnsignedByte();
+        if (version > VERSION) {
+            throw new IOException("Unsupported weather payload version " + version);
+        }
+        int flags = in.readUnsignedByte();
+        long timestampMillis = (in.readInt() & 0xffffffffL) * 1000;
+        int startJulianDay = in.readInt();
+        int count = in.readUnsignedByte();
+        if (count > MAX_DAYS) {
+            throw new IOException("Too many days in weather payload: " + count);
+        }
+        List<Day> days = new ArrayList<Day>(count);
+        for (int i = 0; i < count; i++) {
+            days.add(new Day(in.readUnsignedShort(), in.readShort(), in.readShort()));
+        }
+        return new WeatherPayload((flags & FLAG_METRIC) != 0, timestampMillis, startJulianDay,
+                days);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof WeatherPayload)) {
+            return false;
+        }
+        WeatherPayload other = (WeatherPayload) o;
+        return metric == other.metric && timestampMillis == other.timestampMillis
+                && startJulianDay == other.startJulianDay && mDays.equals(other.mDays);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (metric ? 1 : 0);
+        result = 31 * result + (int) (timestampMillis ^ (timestampMillis >>> 32));
+        result = 31 * result + startJulianDay;
+        return 31 * result + mDays.hashCode();
+    }
+}
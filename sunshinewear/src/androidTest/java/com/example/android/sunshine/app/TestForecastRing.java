@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.shared.WeatherPayload;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Checks that the forecast ring finds each day in its slot, and that a day only ever replaces
+    one a full ring earlier.
+ */
+public class TestForecastRing extends AndroidTestCase {
+
+    // December 21st, 2014
+    static final int TEST_JULIAN_DAY = 2457013;
+
+    static WeatherPayload createDays(boolean metric, int startJulianDay, int count, int weatherId) {
+        List<WeatherPayload.Day> days = new ArrayList<WeatherPayload.Day>();
+        for (int i = 0; i < count; i++) {
+            days.add(new WeatherPayload.Day(weatherId, 20 + i, 10 - i));
+        }
+        return new WeatherPayload(metric, System.currentTimeMillis(), startJulianDay, days);
+    }
+
+    public void testGet() {
+        ForecastRing ring = new ForecastRing();
+        assertNull("Error: an empty ring should know no days", ring.get(TEST_JULIAN_DAY));
+
+        ring.put(createDays(true, TEST_JULIAN_DAY, ForecastRing.CAPACITY, 800));
+        for (int i = 0; i < ForecastRing.CAPACITY; i++) {
+            WeatherPayload.Day day = ring.get(TEST_JULIAN_DAY + i);
+            assertNotNull("Error: day " + i + " of the payload is missing", day);
+            assertEquals("Error: day " + i + " is in the wrong slot", 20.0 + i, day.getHigh(), 1e-9);
+        }
+        // These share slots with days that are known, but aren't them.
+        assertNull("Error: the day before the payload shouldn't be known",
+                ring.get(TEST_JULIAN_DAY - 1));
+        assertNull("Error: the day after the payload shouldn't be known",
+                ring.get(TEST_JULIAN_DAY + ForecastRing.CAPACITY));
+    }
+
+    public void testRollover() {
+        ForecastRing ring = new ForecastRing();
+        ring.put(createDays(true, TEST_JULIAN_DAY, ForecastRing.CAPACITY, 800));
+
+        // Three days later, the three days at the end take the slots of the first three.
+        ring.put(createDays(true, TEST_JULIAN_DAY + 3, ForecastRing.CAPACITY, 500));
+        for (int i = 0; i < 3; i++) {
+            assertNull("Error: day " + i + " should have been replaced",
+                    ring.get(TEST_JULIAN_DAY + i));
+        }
+        for (int i = 3; i < ForecastRing.CAPACITY + 3; i++) {
+            WeatherPayload.Day day = ring.get(TEST_JULIAN_DAY + i);
+            assertNotNull("Error: day " + i + " should be known", day);
+            assertEquals("Error: day " + i + " should come from the newer payload",
+                    500, day.weatherId);
+        }
+    }
+
+    public void testPartialPayloadKeepsOtherDays() {
+        ForecastRing ring = new ForecastRing();
+        ring.put(createDays(true, TEST_JULIAN_DAY, ForecastRing.CAPACITY, 800));
+        ring.put(createDays(true, TEST_JULIAN_DAY + 2, 1, 500));
+
+        assertEquals("Error: the day sent again should be replaced",
+                500, ring.get(TEST_JULIAN_DAY + 2).weatherId);
+        assertEquals("Error: the days around it should be left alone",
+                800, ring.get(TEST_JULIAN_DAY + 1).weatherId);
+        assertEquals("Error: the days around it should be left alone",
+                800, ring.get(TEST_JULIAN_DAY + 3).weatherId);
+    }
+
+    public void testEvictBefore() {
+        ForecastRing ring = new ForecastRing();
+        ring.put(createDays(true, TEST_JULIAN_DAY, ForecastRing.CAPACITY, 800));
+
+        ring.evictBefore(TEST_JULIAN_DAY + 2);
+        assertNull("Error: past days should be forgotten", ring.get(TEST_JULIAN_DAY));
+        assertNull("Error: past days should be forgotten", ring.get(TEST_JULIAN_DAY + 1));
+        assertNotNull("Error: today should be kept", ring.get(TEST_JULIAN_DAY + 2));
+        assertNotNull("Error: days ahead should be kept",
+                ring.get(TEST_JULIAN_DAY + ForecastRing.CAPACITY - 1));
+    }
+
+    public void testMetricFollowsLatestPayload() {
+        ForecastRing ring = new ForecastRing();
+        ring.put(createDays(false, TEST_JULIAN_DAY, 1, 800));
+        assertFalse("Error: units should come from the payload", ring.isMetric());
+        ring.put(createDays(true, TEST_JULIAN_DAY + 1, 1, 800));
+        assertTrue("Error: units should come from the latest payload", ring.isMetric());
+    }
+}
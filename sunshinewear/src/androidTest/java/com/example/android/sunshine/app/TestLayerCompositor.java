@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.test.AndroidTestCase;
+
+/*
+    Checks that the compositor only renders the layers that changed, and that a steady-state
+    frame, drawn the way the watch face draws it, allocates nothing.
+ */
+public class TestLayerCompositor extends AndroidTestCase {
+
+    static final int FACE_SIZE = 320;
+
+    private final int[][] mRenders =
+            new int[LayerCompositor.MODE_COUNT][LayerCompositor.LAYER_COUNT];
+    private final Paint mPaint = new Paint();
+    private final String mText = "12:34";
+    // Somewhere for the allocation in testCounterSeesAllocations to go.
+    private Object mGarbage;
+
+    private LayerCompositor createCompositor() {
+        LayerCompositor compositor = new LayerCompositor(new LayerCompositor.Renderer() {
+            @Override
+            public void renderLayer(int layer, int mode, Canvas canvas, int width, int height) {
+                mRenders[mode][layer]++;
+                canvas.drawText(mText, width / 2f, height / 2f, mPaint);
+            }
+        });
+        compositor.setWidth(FACE_SIZE);
+        compositor.setLayerBounds(LayerCompositor.LAYER_BACKGROUND, 0, FACE_SIZE);
+        compositor.setLayerBounds(LayerCompositor.LAYER_DATE, 80, 40);
+        compositor.setLayerBounds(LayerCompositor.LAYER_WEATHER, 120, FACE_SIZE - 120);
+        return compositor;
+    }
+
+    public void testOnlyInvalidatedLayersRender() {
+        LayerCompositor compositor = createCompositor();
+        Canvas canvas = new Canvas(Bitmap.createBitmap(FACE_SIZE, FACE_SIZE,
+                Bitmap.Config.ARGB_8888));
+        try {
+            assertTrue("Error: the first frame should render every layer",
+                    compositor.draw(canvas, LayerCompositor.MODE_INTERACTIVE));
+            assertFalse("Error: nothing changed, so nothing should be rendered",
+                    compositor.draw(canvas, LayerCompositor.MODE_INTERACTIVE));
+
+            compositor.invalidate(LayerCompositor.LAYER_WEATHER);
+            assertTrue(compositor.draw(canvas, LayerCompositor.MODE_INTERACTIVE));
+            int[] interactive = mRenders[LayerCompositor.MODE_INTERACTIVE];
+            assertEquals("Error: the background should have been rendered once",
+                    1, interactive[LayerCompositor.LAYER_BACKGROUND]);
+            assertEquals("Error: the date should have been rendered once",
+                    1, interactive[LayerCompositor.LAYER_DATE]);
+            assertEquals("Error: the invalidated weather should have been rendered again",
+                    2, interactive[LayerCompositor.LAYER_WEATHER]);
+
+            // Ambient has its own copy of each layer, which the interactive frames left alone.
+            assertTrue(compositor.draw(canvas, LayerCompositor.MODE_AMBIENT));
+            assertEquals(1, mRenders[LayerCompositor.MODE_AMBIENT][LayerCompositor.LAYER_DATE]);
+            assertFalse("Error: going back to interactive shouldn't render anything",
+                    compositor.draw(canvas, LayerCompositor.MODE_INTERACTIVE));
+
+            // Moving a layer without resizing it only renders that layer again.
+            compositor.setLayerBounds(LayerCompositor.LAYER_DATE, 90, 40);
+            assertTrue(compositor.draw(canvas, LayerCompositor.MODE_INTERACTIVE));
+            assertEquals(2, interactive[LayerCompositor.LAYER_DATE]);
+            assertEquals(1, interactive[LayerCompositor.LAYER_BACKGROUND]);
+        } finally {
+            compositor.release();
+        }
+    }
+
+    public void testSteadyStateFrameAllocatesNothing() {
+        LayerCompositor compositor = createCompositor();
+        Canvas canvas = new Canvas(Bitmap.createBitmap(FACE_SIZE, FACE_SIZE,
+                Bitmap.Config.ARGB_8888));
+        FrameAllocationCounter counter = new FrameAllocationCounter(true);
+        try {
+            // The first frame creates the layers; the second gets any lazy initialization along
+            // the way out of the count.
+            FrameAllocationCounter warmUp = new FrameAllocationCounter(false);
+            for (int i = 0; i < 2; i++) {
+                drawFrame(compositor, canvas, warmUp);
+            }
+            for (int i = 0; i < 10; i++) {
+                drawFrame(compositor, canvas, counter);
+                assertEquals("Error: steady-state frame " + i + " allocated",
+                        0, counter.getLastFrameAllocations());
+            }
+            assertEquals(10, counter.getSteadyStateFrames());
+            assertEquals(0, counter.getSteadyStateAllocations());
+        } finally {
+            counter.release();
+            compositor.release();
+        }
+    }
+
+    public void testCounterSeesAllocations() {
+        FrameAllocationCounter counter = new FrameAllocationCounter(true);
+        try {
+            counter.beginFrame();
+            mGarbage = new int[16];
+            counter.endFrame(false);
+            assertTrue("Error: the allocation wasn't counted",
+                    counter.getLastFrameAllocations() > 0);
+            assertEquals("Error: a frame that rebuilt something isn't a steady-state one",
+                    0, counter.getSteadyStateFrames());
+        } finally {
+            counter.release();
+        }
+    }
+
+    /*
+        The steady-state path of the watch face's onDraw: the cached layers, then the time.
+     */
+    private void drawFrame(LayerCompositor compositor, Canvas canvas,
+                           FrameAllocationCounter counter) {
+        counter.beginFrame();
+        canvas.drawColor(Color.BLACK);
+        boolean rendered = compositor.draw(canvas, LayerCompositor.MODE_INTERACTIVE);
+        canvas.drawText(mText, FACE_SIZE / 2f, 60, mPaint);
+        counter.endFrame(!rendered);
+    }
+}
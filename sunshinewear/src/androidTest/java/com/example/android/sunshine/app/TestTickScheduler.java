@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import java.util.TimeZone;
+
+/*
+    Checks that the face is woken as rarely as its formats allow, and on the local boundary.
+ */
+public class TestTickScheduler extends AndroidTestCase {
+
+    // December 21st, 2014, 00:00 UTC.
+    static final long TEST_TIME = 1419120000000L;
+
+    public void testTickInterval() {
+        assertEquals("Error: a face with seconds has to tick every second",
+                DateUtils.SECOND_IN_MILLIS, TickScheduler.getTickIntervalMs("HH:mm:ss"));
+        assertEquals("Error: a face with minutes has to tick every minute",
+                DateUtils.MINUTE_IN_MILLIS, TickScheduler.getTickIntervalMs("HH:mm"));
+        assertEquals("Error: a face with hours has to tick every hour",
+                DateUtils.HOUR_IN_MILLIS, TickScheduler.getTickIntervalMs("h a"));
+        assertEquals("Error: a face with only the date has to tick every day",
+                DateUtils.DAY_IN_MILLIS, TickScheduler.getTickIntervalMs("EEE, MMM d yyyy"));
+        assertEquals("Error: the finest format of all should decide",
+                DateUtils.MINUTE_IN_MILLIS,
+                TickScheduler.getTickIntervalMs("EEE, MMM d", "HH:mm", "H"));
+    }
+
+    public void testQuotedTextIgnored() {
+        assertEquals("Error: quoted letters aren't fields",
+                DateUtils.DAY_IN_MILLIS, TickScheduler.getTickIntervalMs("'ms' d"));
+        assertEquals("Error: an escaped quote shouldn't end the quoted text",
+                DateUtils.HOUR_IN_MILLIS, TickScheduler.getTickIntervalMs("H 'it''s'"));
+    }
+
+    public void testDelayAlignedToLocalTime() {
+        TimeZone defaultZone = TimeZone.getDefault();
+        try {
+            // Half an hour off UTC, so the local hour isn't the UTC hour.
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+            TickScheduler scheduler = new TickScheduler(null);
+
+            scheduler.setIntervalMs(DateUtils.HOUR_IN_MILLIS);
+            assertEquals("Error: an hourly tick should come on the local hour",
+                    30 * DateUtils.MINUTE_IN_MILLIS, scheduler.getDelayToNextTickMs(TEST_TIME));
+
+            scheduler.setIntervalMs(DateUtils.MINUTE_IN_MILLIS);
+            assertEquals("Error: on the minute, the next tick should be a minute away",
+                    DateUtils.MINUTE_IN_MILLIS, scheduler.getDelayToNextTickMs(TEST_TIME));
+            assertEquals("Error: the tick should come at the top of the next minute",
+                    59 * DateUtils.SECOND_IN_MILLIS,
+                    scheduler.getDelayToNextTickMs(TEST_TIME + DateUtils.SECOND_IN_MILLIS));
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.net.Uri;
+import android.os.Looper;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.shared.WeatherPayload;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemAsset;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/*
+    Checks that the channel hands the face only the latest item for each path, and no more days
+    than the face can show.
+ */
+public class TestWeatherChannel extends AndroidTestCase {
+
+    private WeatherSnapshot mSnapshot;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // A directory per test, as a channel saves its snapshot in the background.
+        File dir = new File(new File(mContext.getCacheDir(), "TestWeatherChannel"), getName());
+        dir.mkdirs();
+        new File(dir, WeatherSnapshot.FILE_NAME).delete();
+        mSnapshot = new WeatherSnapshot(dir);
+
+        // attach() hands items over on the calling thread's looper.
+        if (Looper.myLooper() == null) {
+            Looper.prepare();
+        }
+    }
+
+    /*
+        A data item as the data layer would hand it over.
+     */
+    static class TestDataItem implements DataItem {
+        private final Uri mUri;
+        private byte[] mData;
+
+        TestDataItem(String path, byte[] data) {
+            mUri = new Uri.Builder().scheme("wear").authority("phone").path(path).build();
+            mData = data;
+        }
+
+        @Override
+        public Uri getUri() {
+            return mUri;
+        }
+
+        @Override
+        public byte[] getData() {
+            return mData;
+        }
+
+        @Override
+        public DataItem setData(byte[] data) {
+            mData = data;
+            return this;
+        }
+
+        @Override
+        public Map<String, DataItemAsset> getAssets() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public DataItem freeze() {
+            return this;
+        }
+
+        @Override
+        public boolean isDataValid() {
+            return true;
+        }
+    }
+
+    static TestDataItem createDayItem(int julianDay, int weatherId) {
+        return new TestDataItem(DigitalWatchFaceUtil.getDayPath(julianDay),
+                TestForecastRing.createDays(true, julianDay, 1, weatherId).encode());
+    }
+
+    /*
+        Attaches a consumer and returns what it was handed straight away.
+     */
+    static List<WeatherChannel.Item> take(WeatherChannel channel) {
+        final List<WeatherChannel.Item> taken = new ArrayList<WeatherChannel.Item>();
+        WeatherChannel.Consumer consumer = new WeatherChannel.Consumer() {
+            @Override
+            public void onWeatherItems(List<WeatherChannel.Item> items) {
+                taken.addAll(items);
+            }
+        };
+        channel.attach(consumer);
+        channel.detach(consumer);
+        return taken;
+    }
+
+    static int getWeatherId(WeatherChannel.Item item) throws IOException {
+        return WeatherPayload.decode(item.data).getDays().get(0).weatherId;
+    }
+
+    public void testLastValueWins() throws IOException {
+        WeatherChannel channel = new WeatherChannel(mSnapshot);
+        int day = TestForecastRing.TEST_JULIAN_DAY;
+        channel.offer(createDayItem(day, 800));
+        channel.offer(createDayItem(day + 1, 801));
+        channel.offer(createDayItem(day, 500));
+
+        List<WeatherChannel.Item> items = take(channel);
+        assertEquals("Error: an item should replace the one waiting for its path",
+                2, items.size());
+        // The replacement goes to the back, as the newest item.
+        assertEquals(DigitalWatchFaceUtil.getDayPath(day + 1), items.get(0).path);
+        assertEquals(801, getWeatherId(items.get(0)));
+        assertEquals(DigitalWatchFaceUtil.getDayPath(day), items.get(1).path);
+        assertEquals("Error: the face should get the latest value",
+                500, getWeatherId(items.get(1)));
+        assertNull("Error: payloads don't need the data item", items.get(1).dataItem);
+
+        assertTrue("Error: items should only be handed over once", take(channel).isEmpty());
+    }
+
+    public void testTrimDropsEarliestDays() throws IOException {
+        WeatherChannel channel = new WeatherChannel(mSnapshot);
+        int day = TestForecastRing.TEST_JULIAN_DAY;
+
+        // An older phone app's single item goes first, as it isn't a day.
+        TestDataItem legacy = new TestDataItem(DigitalWatchFaceUtil.PATH, new byte[] {1});
+        channel.offer(legacy);
+        for (int i = 1; i <= WeatherChannel.CAPACITY; i++) {
+            channel.offer(createDayItem(day + i, 800));
+        }
+        // A late day earlier than all the others is dropped rather than a later one.
+        channel.offer(createDayItem(day, 800));
+
+        List<WeatherChannel.Item> items = take(channel);
+        assertEquals("Error: the channel should hold no more than it can show",
+                WeatherChannel.CAPACITY, items.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals("Error: the earliest days should have been dropped",
+                    DigitalWatchFaceUtil.getDayPath(day + 1 + i), items.get(i).path);
+        }
+    }
+
+    public void testLegacyItemKeepsDataItem() {
+        WeatherChannel channel = new WeatherChannel(mSnapshot);
+        TestDataItem legacy = new TestDataItem(DigitalWatchFaceUtil.PATH, new byte[] {1});
+        channel.offer(legacy);
+
+        List<WeatherChannel.Item> items = take(channel);
+        assertEquals(1, items.size());
+        assertSame("Error: a legacy item needs its data item for the icon asset",
+                legacy, items.get(0).dataItem);
+    }
+
+    public void testAttachHandsOverSnapshot() {
+        long receivedMillis = TestWeatherSnapshot.TEST_RECEIVED_MILLIS;
+        Map<String, byte[]> saved = TestWeatherSnapshot.createItems();
+        mSnapshot.save(saved, receivedMillis);
+
+        WeatherChannel channel = new WeatherChannel(mSnapshot);
+        assertEquals("Error: the receive time should come from the snapshot",
+                receivedMillis, channel.getReceivedMillis());
+        List<WeatherChannel.Item> items = take(channel);
+        assertEquals("Error: a new face should be handed the snapshot",
+                saved.size(), items.size());
+        for (WeatherChannel.Item item : items) {
+            assertTrue("Error: unexpected item " + item.path, saved.containsKey(item.path));
+        }
+
+        channel.offer(createDayItem(TestForecastRing.TEST_JULIAN_DAY + 5, 800));
+        assertTrue("Error: an offered item should update the receive time",
+                channel.getReceivedMillis() > receivedMillis);
+        // A face attaching again gets the snapshot as well as the new item.
+        assertEquals(saved.size() + 1, take(channel).size());
+    }
+}
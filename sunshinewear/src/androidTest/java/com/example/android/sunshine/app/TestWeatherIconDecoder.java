@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+/*
+    Checks how far the weather icons are downsampled as they are decoded.
+ */
+public class TestWeatherIconDecoder extends AndroidTestCase {
+
+    public void testCalculateInSampleSize() {
+        assertEquals("Error: an icon of the right size shouldn't be sampled",
+                1, WeatherIconDecoder.calculateInSampleSize(100, 100, 100, 100));
+        assertEquals("Error: a smaller icon shouldn't be sampled",
+                1, WeatherIconDecoder.calculateInSampleSize(50, 60, 100, 100));
+        assertEquals("Error: an icon four times too big should be sampled by 4",
+                4, WeatherIconDecoder.calculateInSampleSize(400, 400, 100, 100));
+        assertEquals("Error: sampling should never go below the target size",
+                2, WeatherIconDecoder.calculateInSampleSize(399, 400, 100, 100));
+        assertEquals("Error: the shorter side should limit the sampling",
+                2, WeatherIconDecoder.calculateInSampleSize(800, 200, 100, 100));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+    Checks that the weather snapshot survives a round trip, and that a snapshot written before
+    the receive time was recorded still loads.
+ */
+public class TestWeatherSnapshot extends AndroidTestCase {
+
+    static final long TEST_RECEIVED_MILLIS = 1419120000000L;
+
+    private File mDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDir = new File(mContext.getCacheDir(), "TestWeatherSnapshot");
+        mDir.mkdirs();
+        new File(mDir, WeatherSnapshot.FILE_NAME).delete();
+    }
+
+    static Map<String, byte[]> createItems() {
+        Map<String, byte[]> items = new LinkedHashMap<String, byte[]>();
+        items.put(DigitalWatchFaceUtil.getDayPath(TestForecastRing.TEST_JULIAN_DAY + 1),
+                new byte[] {4, 5, 6});
+        items.put(DigitalWatchFaceUtil.getDayPath(TestForecastRing.TEST_JULIAN_DAY),
+                new byte[] {1, 2, 3});
+        return items;
+    }
+
+    static void assertItemsEqual(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+        assertEquals("Error: wrong number of items", expected.size(), actual.size());
+        Iterator<Map.Entry<String, byte[]>> actualItems = actual.entrySet().iterator();
+        for (Map.Entry<String, byte[]> item : expected.entrySet()) {
+            Map.Entry<String, byte[]> actualItem = actualItems.next();
+            assertEquals("Error: items out of order", item.getKey(), actualItem.getKey());
+            assertTrue("Error: wrong data for " + item.getKey(),
+                    Arrays.equals(item.getValue(), actualItem.getValue()));
+        }
+    }
+
+    public void testRoundTrip() {
+        Map<String, byte[]> items = createItems();
+        new WeatherSnapshot(mDir).save(items, TEST_RECEIVED_MILLIS);
+
+        WeatherSnapshot snapshot = new WeatherSnapshot(mDir);
+        assertItemsEqual(items, snapshot.load());
+        assertEquals("Error: the receive time should survive a round trip",
+                TEST_RECEIVED_MILLIS, snapshot.getReceivedMillis());
+    }
+
+    public void testSaveReplaces() {
+        WeatherSnapshot snapshot = new WeatherSnapshot(mDir);
+        snapshot.save(createItems(), TEST_RECEIVED_MILLIS);
+
+        Map<String, byte[]> items = new LinkedHashMap<String, byte[]>();
+        items.put(DigitalWatchFaceUtil.getDayPath(TestForecastRing.TEST_JULIAN_DAY + 2),
+                new byte[] {7});
+        snapshot.save(items, TEST_RECEIVED_MILLIS + 1);
+
+        assertItemsEqual(items, snapshot.load());
+        assertEquals(TEST_RECEIVED_MILLIS + 1, snapshot.getReceivedMillis());
+        assertFalse("Error: the temporary file should be gone",
+                new File(mDir, WeatherSnapshot.FILE_NAME + ".tmp").exists());
+    }
+
+    public void testLoadVersion1() throws IOException {
+        Map<String, byte[]> items = createItems();
+        File file = new File(mDir, WeatherSnapshot.FILE_NAME);
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(1);
+        out.writeInt(items.size());
+        for (Map.Entry<String, byte[]> item : items.entrySet()) {
+            out.writeUTF(item.getKey());
+            out.writeShort(item.getValue().length);
+            out.write(item.getValue());
+        }
+        out.close();
+        file.setLastModified(TEST_RECEIVED_MILLIS);
+
+        WeatherSnapshot snapshot = new WeatherSnapshot(mDir);
+        assertItemsEqual(items, snapshot.load());
+        assertEquals("Error: a version 1 snapshot was received when it was written",
+                file.lastModified(), snapshot.getReceivedMillis());
+    }
+
+    public void testLoadMissingOrUnreadable() throws IOException {
+        WeatherSnapshot snapshot = new WeatherSnapshot(mDir);
+        assertTrue("Error: there should be nothing before the first save",
+                snapshot.load().isEmpty());
+        assertEquals(0, snapshot.getReceivedMillis());
+
+        // An unknown version.
+        File file = new File(mDir, WeatherSnapshot.FILE_NAME);
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(99);
+        out.writeLong(TEST_RECEIVED_MILLIS);
+        out.writeInt(0);
+        out.close();
+        assertTrue("Error: a snapshot of an unknown version should be ignored",
+                snapshot.load().isEmpty());
+        assertEquals(0, snapshot.getReceivedMillis());
+
+        // Cut short in the middle of an item.
+        out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(2);
+        out.writeLong(TEST_RECEIVED_MILLIS);
+        out.writeInt(2);
+        out.writeUTF(DigitalWatchFaceUtil.getDayPath(TestForecastRing.TEST_JULIAN_DAY));
+        out.writeShort(3);
+        out.write(1);
+        out.close();
+        assertTrue("Error: a truncated snapshot should be ignored", snapshot.load().isEmpty());
+        assertEquals(0, snapshot.getReceivedMillis());
+    }
+}
@@ -10,7 +10,6 @@ import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
 import com.google.android.gms.wearable.DataMap;
-import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.MessageEvent;
 import com.google.android.gms.wearable.Node;
 import com.google.android.gms.wearable.WearableListenerService;
@@ -45,20 +44,17 @@ public class DigitalWatchFaceListenerService extends WearableListenerService
 //        }
 
         for (DataEvent dataEvent : dataEvents) {
+            // Past days are deleted by the phone, but the face has already dropped them.
             if (dataEvent.getType() != DataEvent.TYPE_CHANGED) {
                 continue;
             }
 
             DataItem dataItem = dataEvent.getDataItem();
-            if (!dataItem.getUri().getPath().equals(DigitalWatchFaceUtil.PATH)) {
+            if (!DigitalWatchFaceUtil.isWeatherPath(dataItem.getUri().getPath())) {
                 continue;
             }
 
-            DataMapItem dataMapItem = DataMapItem.fromDataItem(dataItem);
-            Log.e(TAG, "Max temp is " + dataMapItem.getDataMap().getString("maxTemp", "None"));
-            Log.e(TAG, "Min temp is " + dataMapItem.getDataMap().getString("minTemp", "None"));
-
-            SunshineWatchFaceService.setReceivedData(dataMapItem);
+            WeatherChannel.get(this).offer(dataItem);
             Log.e(TAG, "Overwrite called");
         }
 
@@ -1,5 +1,7 @@
 package com.example.android.sunshine.app;
 
+import com.example.android.sunshine.shared.WeatherKind;
+
 /**
  * Created by lmedina on 11/5/2015.
  */
@@ -19,19 +21,68 @@ package com.example.android.sunshine.app;
  * limitations under the License.
  */
 
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.DataItem;
-import com.google.android.gms.wearable.DataMapItem;
-
 public final class DigitalWatchFaceUtil {
     private static final String TAG = "DigitalWatchFaceUtil";
 
+    /**
+     * Older phone apps send everything in a single item at this path.  Current ones send one
+     * item per day, at {@link #getDayPath(int)}.
+     */
     public static final String PATH = "/sunshine_data_update";
 
+    private static final String DAY_PATH_PREFIX = PATH + "/";
+
+    /**
+     * @return the path of the item holding the forecast for the given julian day.
+     */
+    public static String getDayPath(int julianDay) {
+        return DAY_PATH_PREFIX + julianDay;
+    }
+
+    /**
+     * @return the julian day of a per-day item's path, or -1 if it isn't one.
+     */
+    public static int getJulianDay(String path) {
+        if (path == null || !path.startsWith(DAY_PATH_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(path.substring(DAY_PATH_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return whether the path is one the phone app sends the weather on.
+     */
+    public static boolean isWeatherPath(String path) {
+        return PATH.equals(path) || getJulianDay(path) != -1;
+    }
+
+    // Indexed by WeatherKind.
+    private static final int[] ICONS = {
+            R.drawable.ic_storm,
+            R.drawable.ic_light_rain,
+            R.drawable.ic_rain,
+            R.drawable.ic_snow,
+            R.drawable.ic_fog,
+            R.drawable.ic_clear,
+            R.drawable.ic_light_clouds,
+            R.drawable.ic_cloudy
+    };
 
-    public interface FetchConfigDataMapCallback {
-        void onConfigDataMapFetched(DataMapItem dataMapItem);
+    /**
+     * Helper method to provide the icon resource id according to the weather condition id
+     * returned by the OpenWeatherMap call.  The phone app picks its icons by the same
+     * {@link WeatherKind}.
+     *
+     * @param weatherId from OpenWeatherMap API response
+     * @return resource id for the corresponding icon. -1 if no relation is found.
+     */
+    public static int getIconResourceForWeatherCondition(int weatherId) {
+        int kind = WeatherKind.get(weatherId);
+        return kind == WeatherKind.NONE ? -1 : ICONS[kind];
     }
 
 //    private static int parseColor(String colorName) {
@@ -105,27 +156,5 @@ public final class DigitalWatchFaceUtil {
 //                });
 //    }
 
-    public static class DataItemResultCallback implements ResultCallback<DataApi.DataItemResult> {
-
-        private final FetchConfigDataMapCallback mCallback;
-
-        public DataItemResultCallback(FetchConfigDataMapCallback callback) {
-            mCallback = callback;
-        }
-
-        @Override
-        public void onResult(DataApi.DataItemResult dataItemResult) {
-            if (dataItemResult.getStatus().isSuccess()) {
-                if (dataItemResult.getDataItem() != null) {
-                    DataItem configDataItem = dataItemResult.getDataItem();
-                    DataMapItem dataMapItem = DataMapItem.fromDataItem(configDataItem);
-                    mCallback.onConfigDataMapFetched(dataMapItem);
-                } else {
-                    mCallback.onConfigDataMapFetched(null);
-                }
-            }
-        }
-    }
-
     private DigitalWatchFaceUtil() { }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import com.example.android.sunshine.shared.WeatherPayload;
+
+/**
+ * The upcoming days of forecast known to the watch, so the face can move on to the next day,
+ * or show the days ahead, without asking the phone.
+ *
+ * A fixed number of slots, one per julian day modulo the capacity.  A day replaces whatever
+ * was in its slot, which can only be a day at least a full ring earlier and so long past.
+ * Thread safe.
+ */
+public class ForecastRing {
+    /** As many days as the phone sends. */
+    public static final int CAPACITY = 7;
+
+    private final int[] mJulianDays = new int[CAPACITY];
+    private final WeatherPayload.Day[] mDays = new WeatherPayload.Day[CAPACITY];
+    private boolean mMetric = true;
+
+    /**
+     * Stores every day in the payload, replacing what was known about those days.
+     */
+    public synchronized void put(WeatherPayload payload) {
+        mMetric = payload.metric;
+        int julianDay = payload.startJulianDay;
+        for (WeatherPayload.Day day : payload.getDays()) {
+            int slot = slot(julianDay);
+            mJulianDays[slot] = julianDay;
+            mDays[slot] = day;
+            julianDay++;
+        }
+    }
+
+    /**
+     * @return the forecast for the day, or null if it isn't known.
+     */
+    public synchronized WeatherPayload.Day get(int julianDay) {
+        int slot = slot(julianDay);
+        return mDays[slot] != null && mJulianDays[slot] == julianDay ? mDays[slot] : null;
+    }
+
+    /**
+     * @return whether temperatures should be shown in metric, as of the latest payload.
+     */
+    public synchronized boolean isMetric() {
+        return mMetric;
+    }
+
+    /**
+     * Forgets the days before {@code julianDay}.
+     */
+    public synchronized void evictBefore(int julianDay) {
+        for (int slot = 0; slot < CAPACITY; slot++) {
+            if (mDays[slot] != null && mJulianDays[slot] < julianDay) {
+                mDays[slot] = null;
+            }
+        }
+    }
+
+    private static int slot(int julianDay) {
+        // Julian days are positive for any date a watch will see.
+        return julianDay % CAPACITY;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Counts the objects allocated on the drawing thread during each frame.  A steady-state frame,
+ * one where neither the text nor any cached layer had to be rebuilt, should allocate nothing;
+ * anything else means something in onDraw is generating garbage.
+ *
+ * Counting slows allocation down, so it only runs when enabled (debug builds).
+ */
+public class FrameAllocationCounter {
+    private static final String TAG = "FrameAllocations";
+
+    private final boolean mEnabled;
+
+    private int mFrameStartCount;
+    private int mLastFrameAllocations;
+    private long mSteadyStateFrames;
+    private long mSteadyStateAllocations;
+
+    @SuppressWarnings("deprecation")
+    public FrameAllocationCounter(boolean enabled) {
+        mEnabled = enabled;
+        if (mEnabled) {
+            Debug.startAllocCounting();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    public void beginFrame() {
+        if (mEnabled) {
+            mFrameStartCount = Debug.getThreadAllocCount();
+        }
+    }
+
+    /**
+     * @param steadyState true if nothing had to be rebuilt for this frame.
+     */
+    @SuppressWarnings("deprecation")
+    public void endFrame(boolean steadyState) {
+        if (!mEnabled) {
+            return;
+        }
+        mLastFrameAllocations = Debug.getThreadAllocCount() - mFrameStartCount;
+        if (steadyState) {
+            mSteadyStateFrames++;
+            mSteadyStateAllocations += mLastFrameAllocations;
+            if (mLastFrameAllocations != 0) {
+                Log.w(TAG, "Steady-state frame allocated " + mLastFrameAllocations + " objects");
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * @return the objects allocated by the last frame drawn.
+     */
+    public int getLastFrameAllocations() {
+        return mLastFrameAllocations;
+    }
+
+    /**
+     * @return the objects allocated by all steady-state frames so far.  Should be zero.
+     */
+    public long getSteadyStateAllocations() {
+        return mSteadyStateAllocations;
+    }
+
+    public long getSteadyStateFrames() {
+        return mSteadyStateFrames;
+    }
+
+    @SuppressWarnings("deprecation")
+    public void release() {
+        if (mEnabled) {
+            Debug.stopAllocCounting();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Records how long each frame takes to draw, separately for each {@link LayerCompositor} mode,
+ * and reports the median and 99th percentile over the most recent frames.
+ *
+ * Recording doesn't allocate, so it is safe to call from onDraw.
+ */
+public class FrameTimeStats {
+    /** The number of most recent frames kept for each mode. */
+    static final int WINDOW = 256;
+
+    private final long[][] mSamples = new long[LayerCompositor.MODE_COUNT][WINDOW];
+    private final int[] mCount = new int[LayerCompositor.MODE_COUNT];
+    private final int[] mNext = new int[LayerCompositor.MODE_COUNT];
+    private final long[] mSorted = new long[WINDOW];
+
+    public void record(int mode, long drawNanos) {
+        mSamples[mode][mNext[mode]] = drawNanos;
+        mNext[mode] = (mNext[mode] + 1) % WINDOW;
+        if (mCount[mode] < WINDOW) {
+            mCount[mode]++;
+        }
+    }
+
+    public int getSampleCount(int mode) {
+        return mCount[mode];
+    }
+
+    /**
+     * @return the given percentile (nearest rank) of the recorded draw times for the mode, in
+     * nanoseconds, or 0 if no frames have been drawn in that mode.
+     */
+    public long getPercentile(int mode, int percentile) {
+        int count = mCount[mode];
+        if (count == 0) {
+            return 0;
+        }
+        System.arraycopy(mSamples[mode], 0, mSorted, 0, count);
+        Arrays.sort(mSorted, 0, count);
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return mSorted[Math.max(0, Math.min(count, rank) - 1)];
+    }
+
+    /**
+     * Logs p50 and p99 for every mode that has drawn any frames.
+     */
+    public void log(String tag) {
+        for (int mode = 0; mode < LayerCompositor.MODE_COUNT; mode++) {
+            if (mCount[mode] == 0) {
+                continue;
+            }
+            Log.d(tag, String.format(Locale.US, "%s: %d frames, p50 %.3f ms, p99 %.3f ms",
+                    LayerCompositor.MODE_NAMES[mode], mCount[mode],
+                    getPercentile(mode, 50) / 1e6, getPercentile(mode, 99) / 1e6));
+        }
+    }
+
+    public void reset() {
+        Arrays.fill(mCount, 0);
+        Arrays.fill(mNext, 0);
+    }
+}
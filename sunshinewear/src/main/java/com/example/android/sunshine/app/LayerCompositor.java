@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+
+/**
+ * Composites the watch face from offscreen layers.  Each layer is rendered into its own bitmap
+ * once and blitted on every frame after that, until it is invalidated.
+ *
+ * Every display mode (interactive, ambient and low-bit ambient) keeps its own copy of each
+ * layer, so switching in and out of ambient mode doesn't force the layers to be redrawn.
+ * Layers are rendered lazily, for the mode being drawn, by the {@link Renderer}.
+ */
+public class LayerCompositor {
+    public static final int MODE_INTERACTIVE = 0;
+    public static final int MODE_AMBIENT = 1;
+    public static final int MODE_LOW_BIT_AMBIENT = 2;
+    static final int MODE_COUNT = 3;
+    static final String[] MODE_NAMES = {"interactive", "ambient", "low-bit ambient"};
+
+    /** The opaque background, covering the whole face.  Always drawn first. */
+    public static final int LAYER_BACKGROUND = 0;
+    public static final int LAYER_DATE = 1;
+    public static final int LAYER_WEATHER = 2;
+    static final int LAYER_COUNT = 3;
+
+    private static final int ALL_LAYERS = (1 << LAYER_COUNT) - 1;
+
+    public interface Renderer {
+        /**
+         * Draws a layer onto a cleared canvas.  Coordinates are relative to the top of the
+         * layer.
+         */
+        void renderLayer(int layer, int mode, Canvas canvas, int width, int height);
+    }
+
+    private final Renderer mRenderer;
+
+    private final Bitmap[][] mBitmaps = new Bitmap[MODE_COUNT][LAYER_COUNT];
+    private final Canvas[][] mCanvases = new Canvas[MODE_COUNT][LAYER_COUNT];
+
+    /** A bit per layer, for each mode, set when that layer has to be rendered again. */
+    private final int[] mDirtyLayers = new int[MODE_COUNT];
+
+    private final int[] mLayerTop = new int[LAYER_COUNT];
+    private final int[] mLayerHeight = new int[LAYER_COUNT];
+    private int mWidth;
+
+    public LayerCompositor(Renderer renderer) {
+        mRenderer = renderer;
+        invalidateAll();
+    }
+
+    /**
+     * Sets the width of the face.  Does nothing if it hasn't changed, otherwise every layer is
+     * rendered again.
+     */
+    public void setWidth(int width) {
+        if (width == mWidth) {
+            return;
+        }
+        mWidth = width;
+        for (int layer = 0; layer < LAYER_COUNT; layer++) {
+            releaseLayer(layer);
+        }
+        invalidateAll();
+    }
+
+    /**
+     * Places a layer.  Does nothing if it hasn't moved, otherwise the layer is rendered again.
+     */
+    public void setLayerBounds(int layer, int top, int height) {
+        height = Math.max(1, height);
+        if (mLayerTop[layer] == top && mLayerHeight[layer] == height) {
+            return;
+        }
+        if (mLayerHeight[layer] != height) {
+            releaseLayer(layer);
+        }
+        mLayerTop[layer] = top;
+        mLayerHeight[layer] = height;
+        invalidate(layer);
+    }
+
+    /**
+     * Marks a layer to be rendered again, in every mode.  May be called from any thread, as long
+     * as the watch face is then invalidated.
+     */
+    public synchronized void invalidate(int layer) {
+        for (int mode = 0; mode < MODE_COUNT; mode++) {
+            mDirtyLayers[mode] |= 1 << layer;
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        for (int mode = 0; mode < MODE_COUNT; mode++) {
+            mDirtyLayers[mode] = ALL_LAYERS;
+        }
+    }
+
+    /**
+     * Renders any invalidated layers for the mode and blits every layer onto the canvas.
+     *
+     * @return true if any layer had to be rendered.
+     */
+    public boolean draw(Canvas canvas, int mode) {
+        if (mWidth <= 0) {
+            return false;
+        }
+        int dirty;
+        synchronized (this) {
+            dirty = mDirtyLayers[mode];
+            mDirtyLayers[mode] = 0;
+        }
+
+        for (int layer = 0; layer < LAYER_COUNT; layer++) {
+            int height = mLayerHeight[layer];
+            if (height <= 0) {
+                // Not placed yet; setLayerBounds() will invalidate it.
+                continue;
+            }
+            Bitmap bitmap = mBitmaps[mode][layer];
+            if (bitmap == null) {
+                // The background is opaque, so it can do with half the memory of the others.
+                bitmap = Bitmap.createBitmap(mWidth, height, layer == LAYER_BACKGROUND
+                        ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888);
+                mBitmaps[mode][layer] = bitmap;
+                mCanvases[mode][layer] = new Canvas(bitmap);
+                dirty |= 1 << layer;
+            }
+            if ((dirty & (1 << layer)) != 0) {
+                bitmap.eraseColor(Color.TRANSPARENT);
+                mRenderer.renderLayer(layer, mode, mCanvases[mode][layer], mWidth, height);
+            }
+            canvas.drawBitmap(bitmap, 0, mLayerTop[layer], null);
+        }
+        return dirty != 0;
+    }
+
+    private void releaseLayer(int layer) {
+        for (int mode = 0; mode < MODE_COUNT; mode++) {
+            if (mBitmaps[mode][layer] != null) {
+                mBitmaps[mode][layer].recycle();
+                mBitmaps[mode][layer] = null;
+                mCanvases[mode][layer] = null;
+            }
+        }
+    }
+
+    /**
+     * Frees every layer bitmap.  The compositor can still be drawn afterwards, it will just
+     * render everything again.
+     */
+    public void release() {
+        for (int layer = 0; layer < LAYER_COUNT; layer++) {
+            releaseLayer(layer);
+        }
+        invalidateAll();
+    }
+}
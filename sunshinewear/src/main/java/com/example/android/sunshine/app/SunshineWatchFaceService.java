@@ -22,7 +22,6 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
@@ -30,36 +29,39 @@ import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Message;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
+import android.text.format.DateUtils;
+import android.text.format.Time;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
+import com.example.android.sunshine.shared.WeatherPayload;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
-import com.google.android.gms.wearable.Node;
-import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.Wearable;
 
-import java.io.InputStream;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Sample digital watch face with blinking colons and seconds. In ambient mode, the seconds are
- * replaced with an AM/PM indicator and the colons don't blink. On devices with low-bit ambient
+ * Digital watch face showing the time, the date, today's forecast and a strip of the next few
+ * days. The face only redraws when the minute changes. On devices with low-bit ambient
  * mode, the text is drawn without anti-aliasing in ambient mode. On devices which require burn-in
  * protection, the hours are drawn in normal rather than bold. The time is drawn with less contrast
  * and without seconds in mute mode.
@@ -73,33 +75,36 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
 
     /**
-     * Update rate in milliseconds for normal (not ambient and not mute) mode. We update twice
-     * a second to blink the colons.
+     * Longest time in milliseconds between updates in mute mode. We update at least every
+     * minute, like in ambient mode.
      */
-    private static final long NORMAL_UPDATE_RATE_MS = 500;
+    private static final long MUTE_UPDATE_RATE_MS = TimeUnit.MINUTES.toMillis(1);
 
     /**
-     * Update rate in milliseconds for mute mode. We update every minute, like in ambient mode.
+     * How old the last weather received can get before the face reads the data layer for
+     * anything it missed.  The phone syncs every three hours.
      */
-    private static final long MUTE_UPDATE_RATE_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long WEATHER_STALE_MS = TimeUnit.HOURS.toMillis(3);
 
-    private static final SimpleDateFormat timeFormat = new SimpleDateFormat("h:mm a", Locale.getDefault());
-    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("E, MMM d yyyy", Locale.getDefault());
+    /** How long to wait before reading the data layer again, if the weather is still stale. */
+    private static final long WEATHER_READ_RETRY_MS = TimeUnit.MINUTES.toMillis(15);
 
-    private static Engine mEngine;
+    private static final String TIME_PATTERN = "h:mm a";
+    private static final String DATE_PATTERN = "E, MMM d yyyy";
 
+    /** The size the weather icon is drawn at, in pixels. */
+    private static final int ICON_SIZE_PX = 60;
+
+    /** Only touched on the main thread, like all the weather state. */
     private String mMaxTemp = "";
     private String mMinTemp = "";
+
+    /** Only touched on the main thread. */
     private Bitmap mWeatherBitmap;
 
     @Override
     public Engine onCreateEngine() {
-        mEngine = new Engine();
-        return mEngine;
-    }
-
-    public static void setReceivedData(DataMapItem item){
-        mEngine.processConfig(item);
+        return new Engine();
     }
 
     private class Engine extends CanvasWatchFaceService.Engine implements
@@ -112,37 +117,29 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         /** Alpha value for drawing time when not in mute mode. */
         static final int NORMAL_ALPHA = 255;
 
-        static final int MSG_UPDATE_TIME = 0;
+        /** How many days after today the strip at the bottom shows. */
+        static final int STRIP_DAYS = 3;
 
-        /** How often {@link #mUpdateTimeHandler} ticks in milliseconds. */
-        long mInteractiveUpdateRateMs = NORMAL_UPDATE_RATE_MS;
+        /** The shortest time in which anything drawn on the face can change. */
+        static final long FORMATS_TICK_INTERVAL_MS =
+                TickScheduler.getTickIntervalMs(TIME_PATTERN, DATE_PATTERN);
 
-        /** Handler to update the time periodically in interactive mode. */
-        final Handler mUpdateTimeHandler = new Handler() {
+        /** Wakes the face to update the time in interactive mode. */
+        final TickScheduler mTickScheduler = new TickScheduler(new TickScheduler.Callback() {
             @Override
-            public void handleMessage(Message message) {
-                switch (message.what) {
-                    case MSG_UPDATE_TIME:
-                        if (Log.isLoggable(TAG, Log.VERBOSE)) {
-                            Log.v(TAG, "updating time");
-                        }
-                        invalidate();
-                        if (shouldTimerBeRunning()) {
-                            long timeMs = System.currentTimeMillis();
-                            long delayMs =
-                                    mInteractiveUpdateRateMs - (timeMs % mInteractiveUpdateRateMs);
-                            mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-                        }
-                        break;
+            public void onTick() {
+                if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                    Log.v(TAG, "updating time");
                 }
+                invalidate();
             }
-        };
+        });
 
-        GoogleApiClient mGoogleApiClient = new GoogleApiClient.Builder(SunshineWatchFaceService.this)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .addApi(Wearable.API)
-                .build();
+        /** Shared with the rest of the process; connected for as long as the engine exists. */
+        GoogleApiClient mGoogleApiClient;
+
+        /** When the data layer was last read, or 0. */
+        long mLastWeatherReadMillis;
 
         /**
          * Handles time zone and locale changes.
@@ -151,7 +148,10 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             @Override
             public void onReceive(Context context, Intent intent) {
                 mCalendar.setTimeZone(TimeZone.getDefault());
+                createFormats();
                 invalidate();
+                // Ticks are aligned to local time.
+                updateTimer();
             }
         };
 
@@ -166,11 +166,81 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         Paint mTimePaint;
         Paint mMaxPaint;
         Paint mMinPaint;
+        Paint mStripPaint;
         boolean mMute;
 
         Calendar mCalendar;
         Date mDate;
 
+        /**
+         * The time and date only change once a minute, so they are formatted once a minute
+         * rather than on every frame.
+         */
+        SimpleDateFormat mTimeFormat;
+        SimpleDateFormat mDateFormat;
+        String mTimeText = "";
+        String mDateText = "";
+        long mTextMinute = -1;
+
+        /**
+         * The background, the date and the weather block only change a few times a day, so
+         * they are drawn into cached layers.  Only the time is drawn from scratch every frame.
+         */
+        final LayerCompositor mCompositor = new LayerCompositor(new LayerCompositor.Renderer() {
+            @Override
+            public void renderLayer(int layer, int mode, Canvas canvas, int width, int height) {
+                switch (layer) {
+                    case LayerCompositor.LAYER_BACKGROUND:
+                        canvas.drawRect(0, 0, width, height, mBackgroundPaint);
+                        break;
+                    case LayerCompositor.LAYER_DATE:
+                        canvas.drawText(mDateText, width / 2f, mLineHeight + 10, mDatePaint);
+                        break;
+                    case LayerCompositor.LAYER_WEATHER:
+                        renderWeather(mode, canvas, width);
+                        break;
+                }
+            }
+        });
+        WeatherIconDecoder mIconDecoder;
+        /** The weather condition of the icon last asked for, or -1. */
+        int mIconWeatherId = -1;
+        final RectF mIconRect = new RectF();
+        final Paint mIconPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+        final FrameAllocationCounter mFrameAllocations =
+                new FrameAllocationCounter(BuildConfig.DEBUG);
+        final FrameTimeStats mFrameTimes = new FrameTimeStats();
+
+        /**
+         * The upcoming days, as sent by the phone.  When the date changes, today's weather and
+         * the strip move on from what is stored here, without a round trip to the phone.
+         */
+        final ForecastRing mForecast = new ForecastRing();
+
+        /**
+         * Whether today's weather on the face came from an older phone app, which only sends
+         * today's weather and never fills {@link #mForecast}.  It stays up until a payload
+         * brings a forecast for today.
+         */
+        boolean mShowingLegacyWeather;
+
+        /** Brings the weather the listener service receives over to the main thread. */
+        WeatherChannel mChannel;
+        final WeatherChannel.Consumer mChannelConsumer = new WeatherChannel.Consumer() {
+            @Override
+            public void onWeatherItems(List<WeatherChannel.Item> items) {
+                for (WeatherChannel.Item item : items) {
+                    storeItem(item);
+                }
+                refreshWeather();
+                invalidate();
+            }
+        };
+
+        /** Weekday and temperatures of each day in the strip, in pairs. */
+        String[] mStripText = new String[0];
+
         float mXOffset;
         float mYOffset;
         float mLineHeight;
@@ -214,9 +284,46 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             mTimePaint = createTextPaint(INTERACTIVE_TIME_DIGITS, BOLD_TYPEFACE);
             mMaxPaint = createTextPaint(INTERACTIVE_TIME_DIGITS, BOLD_TYPEFACE);
             mMinPaint = createTextPaint(INTERACTIVE_DATE_DIGITS);
+            mStripPaint = createTextPaint(INTERACTIVE_DATE_DIGITS);
 
             mCalendar = Calendar.getInstance();
             mDate = new Date();
+            createFormats();
+
+            mGoogleApiClient =
+                    WearableConnectionManager.get(SunshineWatchFaceService.this).acquire();
+
+            mIconDecoder = new WeatherIconDecoder(resources, mGoogleApiClient,
+                    new WeatherIconCache(getCacheDir()), ICON_SIZE_PX, ICON_SIZE_PX,
+                    new WeatherIconDecoder.Listener() {
+                        @Override
+                        public void onIconDecoded(Bitmap icon) {
+                            mWeatherBitmap = icon;
+                            mCompositor.invalidate(LayerCompositor.LAYER_WEATHER);
+                            invalidate();
+                        }
+                    });
+
+            // Hands over the last known weather straight away, so it is on the first frame.
+            mChannel = WeatherChannel.get(SunshineWatchFaceService.this);
+            mChannel.attach(mChannelConsumer);
+
+            // Called straight away if the connection is already up, so this goes last.
+            mGoogleApiClient.registerConnectionCallbacks(this);
+            mGoogleApiClient.registerConnectionFailedListener(this);
+        }
+
+        /**
+         * (Re)creates the formatters for the current locale and time zone.
+         */
+        private void createFormats() {
+            Locale locale = Locale.getDefault();
+            TimeZone timeZone = TimeZone.getDefault();
+            mTimeFormat = new SimpleDateFormat(TIME_PATTERN, locale);
+            mTimeFormat.setTimeZone(timeZone);
+            mDateFormat = new SimpleDateFormat(DATE_PATTERN, locale);
+            mDateFormat.setTimeZone(timeZone);
+            mTextMinute = -1;
         }
 
         private void setColors(Resources resources){
@@ -231,7 +338,14 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
         @Override
         public void onDestroy() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mChannel.detach(mChannelConsumer);
+            mTickScheduler.setRunning(false);
+            mIconDecoder.shutdown();
+            mFrameAllocations.release();
+            mCompositor.release();
+            mGoogleApiClient.unregisterConnectionCallbacks(this);
+            mGoogleApiClient.unregisterConnectionFailedListener(this);
+            WearableConnectionManager.get(SunshineWatchFaceService.this).release();
             super.onDestroy();
         }
 
@@ -253,19 +367,18 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             super.onVisibilityChanged(visible);
 
             if (visible) {
-                mGoogleApiClient.connect();
-
                 registerReceiver();
+                readWeatherIfStale();
 
                 // Update time zone and date formats, in case they changed while we weren't visible.
                 mCalendar.setTimeZone(TimeZone.getDefault());
+                createFormats();
             } else {
                 unregisterReceiver();
 
-                if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
-//                    Wearable.DataApi.removeListener(mGoogleApiClient, this);
-//                    Log.e(TAG, "Wearable DataApi listener removed");
-                    mGoogleApiClient.disconnect();
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    mFrameTimes.log(TAG);
+                    Log.d(TAG, "Wakeups per hour: " + mTickScheduler.getWakeupsPerHour());
                 }
             }
 
@@ -317,6 +430,9 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             mMaxPaint.setTextAlign(Paint.Align.CENTER);
             mMinPaint.setTextSize(smallTextSize);
             mMinPaint.setTextAlign(Paint.Align.CENTER);
+            mStripPaint.setTextSize(resources.getDimension(R.dimen.digital_strip_text_size));
+            mStripPaint.setTextAlign(Paint.Align.CENTER);
+            mCompositor.invalidateAll();
         }
 
         @Override
@@ -340,6 +456,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "onTimeTick: ambient = " + isInAmbientMode());
             }
+            mTickScheduler.countWakeup();
             invalidate();
         }
 
@@ -357,6 +474,8 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             // value as ambientColor here.
             adjustPaintColorToCurrentMode(mMinPaint, INTERACTIVE_DATE_DIGITS,
                     AMBIENT_DATE_DIGITS);
+            adjustPaintColorToCurrentMode(mStripPaint, INTERACTIVE_DATE_DIGITS,
+                    AMBIENT_DATE_DIGITS);
 
             if (mLowBitAmbient) {
                 boolean antiAlias = !inAmbientMode;
@@ -364,7 +483,9 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                 mTimePaint.setAntiAlias(antiAlias);
                 mMaxPaint.setAntiAlias(antiAlias);
                 mMinPaint.setAntiAlias(antiAlias);
+                mStripPaint.setAntiAlias(antiAlias);
             }
+            // Each mode has its own copy of the layers, so nothing needs to be redrawn here.
             invalidate();
 
             // Whether the timer should be running depends on whether we're in ambient mode (as well
@@ -386,7 +507,9 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
             boolean inMuteMode = interruptionFilter == WatchFaceService.INTERRUPTION_FILTER_NONE;
             // We only need to update once a minute in mute mode.
-            setInteractiveUpdateRateMs(inMuteMode ? MUTE_UPDATE_RATE_MS : NORMAL_UPDATE_RATE_MS);
+            mTickScheduler.setIntervalMs(inMuteMode
+                    ? Math.max(FORMATS_TICK_INTERVAL_MS, MUTE_UPDATE_RATE_MS)
+                    : FORMATS_TICK_INTERVAL_MS);
 
             if (mMute != inMuteMode) {
                 mMute = inMuteMode;
@@ -394,124 +517,257 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                 mDatePaint.setAlpha(alpha);
                 mTimePaint.setAlpha(alpha);
                 mMaxPaint.setAlpha(alpha);
+                mStripPaint.setAlpha(alpha);
+                mCompositor.invalidate(LayerCompositor.LAYER_DATE);
+                mCompositor.invalidate(LayerCompositor.LAYER_WEATHER);
                 invalidate();
             }
         }
 
-        public void setInteractiveUpdateRateMs(long updateRateMs) {
-            if (updateRateMs == mInteractiveUpdateRateMs) {
-                return;
-            }
-            mInteractiveUpdateRateMs = updateRateMs;
 
-            // Stop and restart the timer so the new update rate takes effect immediately.
-            if (shouldTimerBeRunning()) {
-                updateTimer();
+        @Override
+        public void onDraw(Canvas canvas, Rect bounds) {
+            long startNanos = System.nanoTime();
+            mFrameAllocations.beginFrame();
+            boolean steadyState = !updateText(System.currentTimeMillis());
+
+            int width = bounds.width();
+            int height = bounds.height();
+            int dateTop = (int) mYOffset;
+            int weatherTop = (int) (mYOffset + (mLineHeight * 2));
+            mCompositor.setWidth(width);
+            mCompositor.setLayerBounds(LayerCompositor.LAYER_BACKGROUND, 0, height);
+            mCompositor.setLayerBounds(LayerCompositor.LAYER_DATE, dateTop, weatherTop - dateTop);
+            mCompositor.setLayerBounds(LayerCompositor.LAYER_WEATHER, weatherTop,
+                    height - weatherTop);
+
+            int mode = getCompositorMode();
+            if (mCompositor.draw(canvas, mode)) {
+                steadyState = false;
             }
+            canvas.drawText(mTimeText, width / 2f, mYOffset, mTimePaint);
+
+            mFrameAllocations.endFrame(steadyState);
+            mFrameTimes.record(mode, System.nanoTime() - startNanos);
         }
 
+        private int getCompositorMode() {
+            if (!isInAmbientMode()) {
+                return LayerCompositor.MODE_INTERACTIVE;
+            }
+            return mLowBitAmbient
+                    ? LayerCompositor.MODE_LOW_BIT_AMBIENT : LayerCompositor.MODE_AMBIENT;
+        }
 
-        @Override
-        public void onDraw(Canvas canvas, Rect bounds) {
-            long now = System.currentTimeMillis();
+        /**
+         * Reformats the time and date if the minute has changed since they were last formatted.
+         *
+         * @return true if they were reformatted.
+         */
+        private boolean updateText(long now) {
+            long minute = now / DateUtils.MINUTE_IN_MILLIS;
+            if (minute == mTextMinute) {
+                return false;
+            }
+            mTextMinute = minute;
             mCalendar.setTimeInMillis(now);
             mDate.setTime(now);
+            mTimeText = mTimeFormat.format(mDate);
+            String dateText = mDateFormat.format(mDate);
+            if (!dateText.equals(mDateText)) {
+                mDateText = dateText;
+                mCompositor.invalidate(LayerCompositor.LAYER_DATE);
+                // A new day; the weather moves on to it.
+                refreshWeather();
+            }
+            return true;
+        }
 
-            // Draw the background.
-            canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-
-            mTimePaint.setTextAlign(Paint.Align.CENTER);
-            canvas.drawText(
-                    timeFormat.format(mDate),
-                    canvas.getWidth() / 2,
-                    mYOffset,
-                    mTimePaint);
-
-            canvas.drawText(
-                    dateFormat.format(mDate),
-                    canvas.getWidth() / 2,
-                    mYOffset + mLineHeight + 10,
-                    mDatePaint);
-
-            if(mWeatherBitmap != null){
-                float left = (canvas.getWidth() / 2) - 90;
-                float top = mYOffset + (mLineHeight * 2);
-                canvas.drawBitmap(
-                        mWeatherBitmap,
-                        null,
-                        new RectF(left,top,left+60, top+60),
-                        null);
-            }
-
-            if(mMaxTemp == null) mMaxTemp = "";
-            canvas.drawText(
-                    mMaxTemp,
-                    canvas.getWidth() / 2 + 10,
-                    mYOffset + (mLineHeight * 3) + 10,
-                    mMaxPaint);
-
-            if(mMinTemp == null) mMinTemp = "";
-            canvas.drawText(
-                    mMinTemp,
-                    (canvas.getWidth() / 2) + mMaxPaint.measureText(mMaxTemp) + 20,
-                    mYOffset + (mLineHeight * 3) + 10,
-                    mMinPaint);
+        /**
+         * Draws the weather icon and the temperatures, relative to the top of the weather line.
+         */
+        private void renderWeather(int mode, Canvas canvas, int width) {
+            float centerX = width / 2f;
+            Bitmap weatherBitmap = mWeatherBitmap;
+            if (weatherBitmap != null) {
+                float left = centerX - 90;
+                mIconRect.set(left, 0, left + ICON_SIZE_PX, ICON_SIZE_PX);
+                // Filtering would add colors a low-bit display can't show.
+                mIconPaint.setFilterBitmap(mode != LayerCompositor.MODE_LOW_BIT_AMBIENT);
+                canvas.drawBitmap(weatherBitmap, null, mIconRect, mIconPaint);
+            }
 
+            String maxTemp = mMaxTemp == null ? "" : mMaxTemp;
+            String minTemp = mMinTemp == null ? "" : mMinTemp;
+            float baseline = mLineHeight + 10;
+            canvas.drawText(maxTemp, centerX + 10, baseline, mMaxPaint);
+            canvas.drawText(minTemp, centerX + mMaxPaint.measureText(maxTemp) + 20,
+                    baseline, mMinPaint);
+
+            String[] strip = mStripText;
+            float stripLineHeight = mStripPaint.getTextSize() + 4;
+            float dayBaseline = ICON_SIZE_PX + stripLineHeight;
+            for (int i = 0; i < strip.length / 2; i++) {
+                float x = width * (i + 1) / (STRIP_DAYS + 1f);
+                canvas.drawText(strip[2 * i], x, dayBaseline, mStripPaint);
+                canvas.drawText(strip[2 * i + 1], x, dayBaseline + stripLineHeight, mStripPaint);
+            }
         }
 
         /**
-         * Starts the {@link #mUpdateTimeHandler} timer if it should be running and isn't currently
-         * or stops it if it shouldn't be running but currently is.
+         * Starts the {@link #mTickScheduler} if it should be running or stops it if it
+         * shouldn't. In ambient mode the system wakes us every minute instead.
          */
         private void updateTimer() {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "updateTimer");
             }
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
-            if (shouldTimerBeRunning()) {
-                mUpdateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
-            }
+            mTickScheduler.setRunning(shouldTimerBeRunning());
         }
 
         /**
-         * Returns whether the {@link #mUpdateTimeHandler} timer should be running. The timer should
+         * Returns whether the {@link #mTickScheduler} should be running. The timer should
          * only run when we're visible and in interactive mode.
          */
         private boolean shouldTimerBeRunning() {
             return isVisible() && !isInAmbientMode();
         }
 
+        /**
+         * Reads the weather from the data layer, unless what the face already has is recent.
+         * Normally the listener service passes on every change, and the face starts from the
+         * {@link WeatherSnapshot}, so this only catches up on changes that were missed.
+         */
+        private void readWeatherIfStale() {
+            if (!mGoogleApiClient.isConnected()) {
+                // Called again from onConnected.
+                WearableConnectionManager.get(SunshineWatchFaceService.this)
+                        .reconnectIfNeeded();
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (now - mLastWeatherReadMillis < WEATHER_READ_RETRY_MS) {
+                return;
+            }
+            Time time = new Time();
+            time.set(now);
+            boolean haveToday = mForecast.get(Time.getJulianDay(now, time.gmtoff)) != null;
+            if (haveToday && now - mChannel.getReceivedMillis() < WEATHER_STALE_MS) {
+                return;
+            }
+            mLastWeatherReadMillis = now;
+            updateConfigDataItemAndUiOnStartup();
+        }
+
         private void updateConfigDataItemAndUiOnStartup() {
+            // Matches the single item older phone apps send as well as the per-day ones.
+            Uri uri = new Uri.Builder()
+                    .scheme("wear")
+                    .path(DigitalWatchFaceUtil.PATH)
+                    .build();
+            Wearable.DataApi.getDataItems(mGoogleApiClient, uri, DataApi.FILTER_PREFIX)
+                    .setResultCallback(new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(DataItemBuffer dataItems) {
+                            try {
+                                if (!dataItems.getStatus().isSuccess()) {
+                                    Log.w(TAG, "Couldn't read the weather: "
+                                            + dataItems.getStatus());
+                                    return;
+                                }
+                                for (DataItem dataItem : dataItems) {
+                                    mChannel.offer(dataItem);
+                                }
+                                mChannel.markRead();
+                            } finally {
+                                dataItems.release();
+                            }
+                        }
+                    }, 3, TimeUnit.SECONDS);
+        }
 
-            Wearable.NodeApi.getConnectedNodes(mGoogleApiClient).setResultCallback(new ResultCallback<NodeApi.GetConnectedNodesResult>() {
-                @Override
-                public void onResult(NodeApi.GetConnectedNodesResult getConnectedNodesResult) {
-                    for(Node node : getConnectedNodesResult.getNodes()){
-                        Log.e("NODES", node.getDisplayName());
-                        String localNode = node.getId();
-
-                        Uri uri = new Uri.Builder()
-                                .scheme("wear")
-                                .path(DigitalWatchFaceUtil.PATH)
-                                .authority(localNode)
-                                .build();
-                        Wearable.DataApi.getDataItem(mGoogleApiClient, uri)
-                                .setResultCallback(new DigitalWatchFaceUtil.DataItemResultCallback(new DigitalWatchFaceUtil.FetchConfigDataMapCallback() {
-                                    @Override
-                                    public void onConfigDataMapFetched(DataMapItem dataMapItem) {
-                                        processConfig(dataMapItem);
-                                    }
-                                }));
-                    }
+        /**
+         * Adds the days in the item to {@link #mForecast}.  Items from older phone apps, which
+         * only carry today's weather as text, are shown straight away instead.
+         */
+        private void storeItem(WeatherChannel.Item item) {
+            if (!WeatherPayload.isPayload(item.data)) {
+                // Sent by a phone app from before the binary payload.
+                if (item.dataItem != null) {
+                    processConfig(DataMapItem.fromDataItem(item.dataItem));
                 }
-            }, 3, TimeUnit.SECONDS);
+                return;
+            }
+            try {
+                mForecast.put(WeatherPayload.decode(item.data));
+            } catch (IOException e) {
+                Log.e(TAG, "Ignoring unreadable weather payload", e);
+            }
+        }
 
+        /**
+         * Shows today's entry of the stored forecast, and the days after it in the strip,
+         * formatting the temperatures and picking the icon here rather than on the phone.
+         */
+        private void refreshWeather() {
+            long now = System.currentTimeMillis();
+            Time time = new Time();
+            time.set(now);
+            int today = Time.getJulianDay(now, time.gmtoff);
+            mForecast.evictBefore(today);
+            boolean metric = mForecast.isMetric();
+
+            WeatherPayload.Day day = mForecast.get(today);
+            if (day != null) {
+                mMaxTemp = formatTemperature(day.getHigh(), metric);
+                mMinTemp = formatTemperature(day.getLow(), metric);
+                int iconId = DigitalWatchFaceUtil.getIconResourceForWeatherCondition(
+                        day.weatherId);
+                if (iconId != -1 && day.weatherId != mIconWeatherId) {
+                    mIconWeatherId = day.weatherId;
+                    mIconDecoder.decodeResource(iconId);
+                }
+                mShowingLegacyWeather = false;
+            } else if (!mShowingLegacyWeather) {
+                // Nothing for today yet, so don't leave an earlier day's weather up.
+                mMaxTemp = "";
+                mMinTemp = "";
+                mIconWeatherId = -1;
+                mIconDecoder.cancel();
+                mWeatherBitmap = null;
+            }
+
+            String[] strip = new String[2 * STRIP_DAYS];
+            int count = 0;
+            for (int i = 1; i <= STRIP_DAYS; i++) {
+                day = mForecast.get(today + i);
+                if (day == null) {
+                    break;
+                }
+                strip[2 * count] = DateUtils.formatDateTime(SunshineWatchFaceService.this,
+                        time.setJulianDay(today + i),
+                        DateUtils.FORMAT_SHOW_WEEKDAY | DateUtils.FORMAT_ABBREV_WEEKDAY);
+                strip[2 * count + 1] = formatTemperature(day.getHigh(), metric) + "/"
+                        + formatTemperature(day.getLow(), metric);
+                count++;
+            }
+            String[] stripText = new String[2 * count];
+            System.arraycopy(strip, 0, stripText, 0, stripText.length);
+            mStripText = stripText;
+
+            mCompositor.invalidate(LayerCompositor.LAYER_WEATHER);
+        }
+
+        private String formatTemperature(double celsius, boolean metric) {
+            double temperature = metric ? celsius : (celsius * 1.8) + 32;
+            return getString(R.string.format_temperature, temperature);
         }
 
         private void processConfig(DataMapItem dataMapItem){
             if (dataMapItem == null) return;
             final DataMap config = dataMapItem.getDataMap();
             Log.e(TAG, "Processing config");
+            mShowingLegacyWeather = true;
             if(config.containsKey("maxTemp")){
                 mMaxTemp = config.getString("maxTemp");
                 Log.e(TAG, "Received maxTemp: " + mMaxTemp);
@@ -520,55 +776,24 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                 mMinTemp = config.getString("minTemp");
                 Log.e(TAG, "Received minTemp: " + mMinTemp);
             }
+            mCompositor.invalidate(LayerCompositor.LAYER_WEATHER);
             if(config.containsKey("weatherImage")){
-                final Asset imageAsset = dataMapItem.getDataMap().getAsset("weatherImage");
+                Asset imageAsset = dataMapItem.getDataMap().getAsset("weatherImage");
                 Log.e(TAG, "Received asset: " + imageAsset);
-                Thread getImageThread = new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        mWeatherBitmap = loadBitmapFromAsset(imageAsset);
-
-                        postInvalidate();
-                    }
-                });
-                getImageThread.start();
-            }else{
-                invalidate();
+                mIconWeatherId = -1;
+                mIconDecoder.decode(imageAsset);
             }
+            invalidate();
         }
 
 
-        public Bitmap loadBitmapFromAsset(Asset asset) {
-            if (asset == null) {
-                return null;
-            }
-//            ConnectionResult result =
-//                    mGoogleApiClient.blockingConnect(30000, TimeUnit.MILLISECONDS);
-//            if (!result.isSuccess()) {
-//                Log.e(TAG, "No success");
-//                return null;
-//            }
-            // convert asset into a file descriptor and block until it's ready
-            InputStream assetInputStream = Wearable.DataApi.getFdForAsset(
-                    mGoogleApiClient, asset).await().getInputStream();
-            //mGoogleApiClient.disconnect();
-
-            if (assetInputStream == null) {
-                Log.e(TAG, "Requested an unknown Asset.");
-                return null;
-            }
-            // decode the stream into a bitmap
-            return BitmapFactory.decodeStream(assetInputStream);
-        }
 
         @Override  // GoogleApiClient.ConnectionCallbacks
         public void onConnected(Bundle connectionHint) {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "onConnected: " + connectionHint);
             }
-//            Wearable.DataApi.addListener(mGoogleApiClient, Engine.this);
-//            Log.e(TAG, "Wearable DataApi listener added");
-            updateConfigDataItemAndUiOnStartup();
+            readWeatherIfStale();
         }
 
         @Override  // GoogleApiClient.ConnectionCallbacks
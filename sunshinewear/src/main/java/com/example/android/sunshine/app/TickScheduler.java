@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.text.format.DateUtils;
+
+import java.util.TimeZone;
+
+/**
+ * Wakes the watch face exactly when what it shows next changes, instead of on a fixed rate.
+ *
+ * The tick interval is derived from the date formats on the face: a face without seconds only
+ * has to wake at the top of each minute.  Ticks are aligned to local time, so an hourly face
+ * wakes on the hour even in time zones with a half-hour offset.
+ *
+ * The scheduler counts its wakeups so the saving can be checked with
+ * {@link #getWakeupsPerHour()}.  Wakeups that come from elsewhere, like the system's ambient
+ * mode ticks, can be added with {@link #countWakeup()}.
+ */
+public class TickScheduler {
+    public interface Callback {
+        void onTick();
+    }
+
+    private static final int MSG_TICK = 0;
+
+    private final Callback mCallback;
+    private final Handler mHandler = new Handler(Looper.getMainLooper()) {
+        @Override
+        public void handleMessage(Message message) {
+            if (message.what != MSG_TICK) {
+                return;
+            }
+            countWakeup();
+            mCallback.onTick();
+            if (mRunning) {
+                scheduleNextTick();
+            }
+        }
+    };
+
+    private long mIntervalMs = DateUtils.MINUTE_IN_MILLIS;
+    private boolean mRunning;
+
+    private long mWakeups;
+    private final long mStartedAtMs = SystemClock.elapsedRealtime();
+
+    public TickScheduler(Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Finds how often text formatted with the given {@link java.text.SimpleDateFormat}
+     * patterns can change: every second if any shows seconds, otherwise every minute, hour or
+     * day.  Quoted literal text is ignored.
+     */
+    public static long getTickIntervalMs(String... patterns) {
+        long interval = DateUtils.DAY_IN_MILLIS;
+        for (String pattern : patterns) {
+            boolean quoted = false;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '\'') {
+                    quoted = !quoted;
+                } else if (!quoted) {
+                    interval = Math.min(interval, getFieldIntervalMs(c));
+                }
+            }
+        }
+        return interval;
+    }
+
+    private static long getFieldIntervalMs(char field) {
+        switch (field) {
+            case 's':
+            case 'S':
+                return DateUtils.SECOND_IN_MILLIS;
+            case 'm':
+                return DateUtils.MINUTE_IN_MILLIS;
+            case 'h':
+            case 'H':
+            case 'k':
+            case 'K':
+            case 'a':
+                return DateUtils.HOUR_IN_MILLIS;
+            default:
+                return DateUtils.DAY_IN_MILLIS;
+        }
+    }
+
+    /**
+     * Changes the tick interval, rescheduling the next tick if the scheduler is running.
+     */
+    public void setIntervalMs(long intervalMs) {
+        if (intervalMs == mIntervalMs) {
+            return;
+        }
+        mIntervalMs = intervalMs;
+        if (mRunning) {
+            mHandler.removeMessages(MSG_TICK);
+            scheduleNextTick();
+        }
+    }
+
+    public long getIntervalMs() {
+        return mIntervalMs;
+    }
+
+    /**
+     * Starts or stops ticking.  Starting again reschedules the next tick, which is needed when
+     * the time zone changes.
+     */
+    public void setRunning(boolean running) {
+        mHandler.removeMessages(MSG_TICK);
+        mRunning = running;
+        if (running) {
+            scheduleNextTick();
+        }
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    long getDelayToNextTickMs(long now) {
+        long localNow = now + TimeZone.getDefault().getOffset(now);
+        return mIntervalMs - (localNow % mIntervalMs);
+    }
+
+    private void scheduleNextTick() {
+        mHandler.sendEmptyMessageDelayed(MSG_TICK, getDelayToNextTickMs(System.currentTimeMillis()));
+    }
+
+    public void countWakeup() {
+        mWakeups++;
+    }
+
+    public long getWakeups() {
+        return mWakeups;
+    }
+
+    /**
+     * @return the average number of wakeups per hour since the scheduler was created.
+     */
+    public float getWakeupsPerHour() {
+        long elapsedMs = Math.max(1, SystemClock.elapsedRealtime() - mStartedAtMs);
+        return mWakeups * (float) DateUtils.HOUR_IN_MILLIS / elapsedMs;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One connection to Google Play services for the whole process, shared by everything on the
+ * watch that talks to the data layer.
+ *
+ * The client connects when the first user acquires it and disconnects when the last one
+ * releases it, rather than with every change of visibility.  Users that need to know when it
+ * is connected register their own callbacks on the client; they are called straight away if
+ * it already is.
+ *
+ * A connection that fails is retried while the client has users, backing off each time, and
+ * users may ask for it to be retried sooner with {@link #reconnectIfNeeded()}.
+ */
+public final class WearableConnectionManager {
+    private static final String TAG = "WearableConnection";
+
+    // A failed connection is retried after this long, doubling each time up to the maximum.
+    private static final long RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private static WearableConnectionManager sInstance;
+
+    /**
+     * @return the connection manager for this process.
+     */
+    public static synchronized WearableConnectionManager get(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearableConnectionManager(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private final GoogleApiClient mGoogleApiClient;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private int mUsers;
+    private long mRetryMillis = RETRY_MILLIS;
+
+    private final Runnable mReconnect = new Runnable() {
+        @Override
+        public void run() {
+            reconnectIfNeeded();
+        }
+    };
+
+    private WearableConnectionManager(Context context) {
+        mGoogleApiClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .addConnectionCallbacks(new GoogleApiClient.ConnectionCallbacks() {
+                    @Override
+                    public void onConnected(Bundle connectionHint) {
+                        if (Log.isLoggable(TAG, Log.DEBUG)) {
+                            Log.d(TAG, "onConnected: " + connectionHint);
+                        }
+                        onConnectionSucceeded();
+                    }
+
+                    @Override
+                    public void onConnectionSuspended(int cause) {
+                        // The client reconnects by itself.
+                        if (Log.isLoggable(TAG, Log.DEBUG)) {
+                            Log.d(TAG, "onConnectionSuspended: " + cause);
+                        }
+                    }
+                })
+                .addOnConnectionFailedListener(new GoogleApiClient.OnConnectionFailedListener() {
+                    @Override
+                    public void onConnectionFailed(ConnectionResult result) {
+                        Log.w(TAG, "Couldn't connect to Google Play services: " + result);
+                        scheduleReconnect();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Adds a user of the connection, connecting if it is the first.  Each call must be matched
+     * by a call to {@link #release()}.
+     */
+    public synchronized GoogleApiClient acquire() {
+        if (mUsers++ == 0) {
+            mGoogleApiClient.connect();
+        }
+        return mGoogleApiClient;
+    }
+
+    /**
+     * Removes a user of the connection, disconnecting if it was the last.
+     */
+    public synchronized void release() {
+        if (mUsers == 0) {
+            throw new IllegalStateException("Released more often than acquired");
+        }
+        if (--mUsers == 0) {
+            mHandler.removeCallbacks(mReconnect);
+            mRetryMillis = RETRY_MILLIS;
+            mGoogleApiClient.disconnect();
+        }
+    }
+
+    /**
+     * Connects again if the client has users but is neither connected nor connecting, say
+     * because an earlier attempt failed.
+     */
+    public synchronized void reconnectIfNeeded() {
+        if (mUsers > 0 && !mGoogleApiClient.isConnected() && !mGoogleApiClient.isConnecting()) {
+            mHandler.removeCallbacks(mReconnect);
+            mGoogleApiClient.connect();
+        }
+    }
+
+    private synchronized void onConnectionSucceeded() {
+        mHandler.removeCallbacks(mReconnect);
+        mRetryMillis = RETRY_MILLIS;
+    }
+
+    private synchronized void scheduleReconnect() {
+        if (mUsers == 0) {
+            return;
+        }
+        mHandler.removeCallbacks(mReconnect);
+        mHandler.postDelayed(mReconnect, mRetryMillis);
+        mRetryMillis = Math.min(mRetryMillis * 2, MAX_RETRY_MILLIS);
+    }
+}
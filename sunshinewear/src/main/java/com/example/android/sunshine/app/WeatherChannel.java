@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.android.sunshine.shared.WeatherPayload;
+import com.google.android.gms.wearable.DataItem;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands weather items from the listener service, or anyone else that reads the data layer, to
+ * the watch face, on the watch face's thread.
+ *
+ * Items wait here until the face takes them, so nothing is lost if the face isn't running yet.
+ * The channel is bounded and last-value-wins: a newer item for a path replaces the one waiting,
+ * and the oldest days are dropped once more are waiting than the face can show.
+ *
+ * Payload items are also kept in a {@link WeatherSnapshot}, loaded when the process starts.
+ * A face that attaches is handed the snapshot first, so a newly created face has the last known
+ * weather before its first frame.
+ */
+public final class WeatherChannel {
+    /** Today's entry of a legacy item, plus the days the face can show. */
+    static final int CAPACITY = ForecastRing.CAPACITY + 1;
+
+    /**
+     * An item as it came from the data layer.
+     */
+    public static final class Item {
+        public final String path;
+        public final byte[] data;
+        /**
+         * The frozen data item, for legacy items, whose icon is an asset.  Null for payloads
+         * and for items from the snapshot.
+         */
+        public final DataItem dataItem;
+
+        Item(String path, byte[] data, DataItem dataItem) {
+            this.path = path;
+            this.data = data;
+            this.dataItem = dataItem;
+        }
+    }
+
+    public interface Consumer {
+        /**
+         * Called on the thread that attached the consumer, with the items that arrived since
+         * the last call, oldest first.
+         */
+        void onWeatherItems(List<Item> items);
+    }
+
+    private static WeatherChannel sInstance;
+
+    /**
+     * @return the channel for this process.
+     */
+    public static synchronized WeatherChannel get(Context context) {
+        if (sInstance == null) {
+            sInstance = new WeatherChannel(
+                    new WeatherSnapshot(context.getApplicationContext().getFilesDir()));
+        }
+        return sInstance;
+    }
+
+    private final WeatherSnapshot mSnapshot;
+    private final ExecutorService mSaver;
+
+    // All guarded by this.
+    private final LinkedHashMap<String, Item> mPending = new LinkedHashMap<String, Item>();
+    private final LinkedHashMap<String, byte[]> mLatest = new LinkedHashMap<String, byte[]>();
+    private long mReceivedMillis;
+    private boolean mSaveQueued;
+    private Consumer mConsumer;
+    private Handler mConsumerHandler;
+    private boolean mDrainPosted;
+
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    private final Runnable mSave = new Runnable() {
+        @Override
+        public void run() {
+            Map<String, byte[]> latest;
+            long receivedMillis;
+            synchronized (WeatherChannel.this) {
+                mSaveQueued = false;
+                latest = new LinkedHashMap<String, byte[]>(mLatest);
+                receivedMillis = mReceivedMillis;
+            }
+            mSnapshot.save(latest, receivedMillis);
+        }
+    };
+
+    WeatherChannel(WeatherSnapshot snapshot) {
+        mSnapshot = snapshot;
+        ThreadPoolExecutor saver = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        saver.allowCoreThreadTimeOut(true);
+        mSaver = saver;
+
+        mLatest.putAll(snapshot.load());
+        mReceivedMillis = snapshot.getReceivedMillis();
+    }
+
+    /**
+     * @return when the weather was last received, or read from the data layer, even if it
+     * hadn't changed; 0 if it never was.  Survives the process, through the snapshot.
+     */
+    public synchronized long getReceivedMillis() {
+        return mReceivedMillis;
+    }
+
+    /**
+     * Records that the data layer was read, so the weather the face has is known to be current
+     * even if no item has changed.  May be called on any thread.
+     */
+    public synchronized void markRead() {
+        mReceivedMillis = System.currentTimeMillis();
+        queueSave();
+    }
+
+    /**
+     * Passes an item on to the face.  May be called on any thread.
+     */
+    public void offer(DataItem dataItem) {
+        String path = dataItem.getUri().getPath();
+        byte[] data = dataItem.getData();
+        boolean payload = WeatherPayload.isPayload(data);
+        synchronized (this) {
+            // The item is only valid until its buffer is released.
+            enqueue(new Item(path, data, payload ? null : dataItem.freeze()));
+            mReceivedMillis = System.currentTimeMillis();
+            if (payload) {
+                mLatest.remove(path);
+                mLatest.put(path, data);
+                trim(mLatest);
+                queueSave();
+            }
+            postDrain();
+        }
+    }
+
+    /**
+     * Starts handing items to the consumer, on the calling thread, which must have a looper.
+     * The snapshot, and any items waiting, are handed over before this returns.
+     */
+    public void attach(Consumer consumer) {
+        synchronized (this) {
+            for (Map.Entry<String, byte[]> entry : mLatest.entrySet()) {
+                if (!mPending.containsKey(entry.getKey())) {
+                    mPending.put(entry.getKey(), new Item(entry.getKey(), entry.getValue(), null));
+                }
+            }
+            trim(mPending);
+            mConsumer = consumer;
+            mConsumerHandler = new Handler(Looper.myLooper());
+            mDrainPosted = false;
+        }
+        drain();
+    }
+
+    public synchronized void detach(Consumer consumer) {
+        if (mConsumer != consumer) {
+            return;
+        }
+        mConsumerHandler.removeCallbacks(mDrain);
+        mConsumer = null;
+        mConsumerHandler = null;
+        mDrainPosted = false;
+    }
+
+    private void queueSave() {
+        if (!mSaveQueued) {
+            mSaveQueued = true;
+            mSaver.execute(mSave);
+        }
+    }
+
+    private void enqueue(Item item) {
+        mPending.remove(item.path);
+        mPending.put(item.path, item);
+        trim(mPending);
+    }
+
+    private void postDrain() {
+        if (mConsumerHandler != null && !mDrainPosted) {
+            mDrainPosted = true;
+            mConsumerHandler.post(mDrain);
+        }
+    }
+
+    private void drain() {
+        Consumer consumer;
+        List<Item> items;
+        synchronized (this) {
+            mDrainPosted = false;
+            consumer = mConsumer;
+            if (consumer == null || mPending.isEmpty()) {
+                return;
+            }
+            items = new ArrayList<Item>(mPending.values());
+            mPending.clear();
+        }
+        consumer.onWeatherItems(items);
+    }
+
+    /**
+     * Drops the earliest days once there are more than {@link #CAPACITY} entries.
+     */
+    private static <V> void trim(LinkedHashMap<String, V> items) {
+        while (items.size() > CAPACITY) {
+            String earliest = null;
+            int earliestDay = Integer.MAX_VALUE;
+            for (String path : items.keySet()) {
+                // The single item of older phone apps isn't a day, so it goes first.
+                int julianDay = DigitalWatchFaceUtil.getJulianDay(path);
+                if (earliest == null || julianDay < earliestDay) {
+                    earliest = path;
+                    earliestDay = julianDay;
+                }
+            }
+            items.remove(earliest);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Two-level cache of weather icons, keyed by the digest of the asset they came in.
+ *
+ * There are only a dozen or so distinct icons, and the phone sends the same PNG, with the same
+ * digest, for the same condition every time.  Decoded icons are kept in memory.  The encoded
+ * bytes are kept in the app's cache directory, so icons survive a restart of the process
+ * without being transferred from the phone again.
+ */
+public class WeatherIconCache {
+    private static final String TAG = "WeatherIconCache";
+
+    static final String DIRECTORY = "icons";
+    static final int MAX_MEMORY_ENTRIES = 16;
+    static final int MAX_DISK_ENTRIES = 32;
+
+    private final File mDirectory;
+    private final LruCache<String, Bitmap> mMemoryCache =
+            new LruCache<String, Bitmap>(MAX_MEMORY_ENTRIES);
+
+    private int mMemoryHits;
+    private int mDiskHits;
+    private int mMisses;
+
+    public WeatherIconCache(File cacheDir) {
+        mDirectory = new File(cacheDir, DIRECTORY);
+    }
+
+    /**
+     * @return the decoded icon, or null if it isn't in memory.
+     */
+    public Bitmap getBitmap(String key) {
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (bitmap != null) {
+            mMemoryHits++;
+        }
+        return bitmap;
+    }
+
+    public void putBitmap(String key, Bitmap bitmap) {
+        mMemoryCache.put(key, bitmap);
+    }
+
+    /**
+     * @return the encoded icon, or null if it isn't on disk.
+     */
+    public byte[] readBytes(String key) {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            mMisses++;
+            return null;
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            int read;
+            while (offset < data.length
+                    && (read = in.read(data, offset, data.length - offset)) != -1) {
+                offset += read;
+            }
+            if (offset != data.length) {
+                throw new IOException("Short read from " + file);
+            }
+            // Least recently used entries are pruned first.
+            file.setLastModified(System.currentTimeMillis());
+            mDiskHits++;
+            return data;
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable icon " + file, e);
+            file.delete();
+            mMisses++;
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Stores the encoded icon on disk.  The file is written under a temporary name and then
+     * renamed, so a crash never leaves a truncated icon behind.
+     */
+    public void writeBytes(String key, byte[] data) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Couldn't create " + mDirectory);
+            return;
+        }
+        File file = getFile(key);
+        File temp = new File(mDirectory, file.getName() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            out.write(data);
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                throw new IOException("Couldn't rename " + temp);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't store icon " + file, e);
+            temp.delete();
+            return;
+        } finally {
+            closeQuietly(out);
+        }
+        prune();
+    }
+
+    /**
+     * Deletes the least recently used icons once there are more than {@link #MAX_DISK_ENTRIES}.
+     */
+    private void prune() {
+        File[] files = mDirectory.listFiles();
+        if (files == null || files.length <= MAX_DISK_ENTRIES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length - MAX_DISK_ENTRIES; i++) {
+            files[i].delete();
+        }
+    }
+
+    File getFile(String key) {
+        // Digests are hex or base64; keep the name safe for any file system.
+        return new File(mDirectory, key.replaceAll("[^A-Za-z0-9_-]", "_") + ".png");
+    }
+
+    public int getMemoryHits() {
+        return mMemoryHits;
+    }
+
+    public int getDiskHits() {
+        return mDiskHits;
+    }
+
+    public int getMisses() {
+        return mMisses;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing useful to do.
+            }
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decodes weather icons on a single background thread.  Icons are normally drawables bundled
+ * with the watch face, picked by weather condition; older phone apps send them as assets.
+ *
+ * Only the most recent request matters: if several arrive while an icon is being decoded, the
+ * ones in between are dropped.  Icons are looked up in a {@link WeatherIconCache} first, so an
+ * icon is only transferred from the phone and decoded the first time it is seen.  New icons
+ * are downsampled while decoding to roughly the size they are drawn at, and handed to the
+ * {@link Listener} on the main thread.
+ *
+ * Decoded icons aren't pooled for reuse: the memory cache holds more entries than there are
+ * distinct icons, so it keeps every one it is given and a bitmap is almost never freed to
+ * decode into.
+ */
+public class WeatherIconDecoder {
+    private static final String TAG = "WeatherIconDecoder";
+
+    public interface Listener {
+        /**
+         * Called on the main thread with the latest icon.  The bitmap may be shared with the
+         * cache, so it must not be modified.
+         */
+        void onIconDecoded(Bitmap icon);
+    }
+
+    private final Resources mResources;
+    private final GoogleApiClient mGoogleApiClient;
+    private final WeatherIconCache mCache;
+    private final int mTargetWidth;
+    private final int mTargetHeight;
+    private final Listener mListener;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+
+    /**
+     * An icon to decode: an {@link Asset} or a drawable id, and the {@link #cancel()}
+     * generation it was asked for in.
+     */
+    private static final class Request {
+        final Object source;
+        final int generation;
+
+        Request(Object source, int generation) {
+            this.source = source;
+            this.generation = generation;
+        }
+    }
+
+    /** The latest icon waiting to be decoded, if any. */
+    private final AtomicReference<Request> mPending = new AtomicReference<Request>();
+
+    /** Bumped by {@link #cancel()}.  Only used on the main thread. */
+    private int mGeneration;
+
+    private final Runnable mDrainPending = new Runnable() {
+        @Override
+        public void run() {
+            Request request;
+            while ((request = mPending.getAndSet(null)) != null) {
+                Object source = request.source;
+                Bitmap icon = source instanceof Asset
+                        ? decode((Asset) source) : decodeResource((Integer) source);
+                if (icon == null) {
+                    continue;
+                }
+                if (mPending.get() == null) {
+                    // Otherwise it's already out of date.
+                    publish(icon, request.generation);
+                }
+            }
+        }
+    };
+
+    private final ByteArrayOutputStream mBuffer = new ByteArrayOutputStream(16 * 1024);
+    private final byte[] mChunk = new byte[8 * 1024];
+
+    public WeatherIconDecoder(Resources resources, GoogleApiClient googleApiClient,
+                              WeatherIconCache cache, int targetWidth, int targetHeight,
+                              Listener listener) {
+        mResources = resources;
+        mGoogleApiClient = googleApiClient;
+        mCache = cache;
+        mTargetWidth = targetWidth;
+        mTargetHeight = targetHeight;
+        mListener = listener;
+    }
+
+    /**
+     * Queues an asset to be decoded, replacing any that hasn't been started yet.  Only called
+     * on the main thread.
+     */
+    public void decode(Asset asset) {
+        if (asset != null) {
+            enqueue(asset);
+        }
+    }
+
+    /**
+     * Queues a bundled drawable to be decoded, replacing any icon that hasn't been started yet.
+     * Only called on the main thread.
+     */
+    public void decodeResource(int resId) {
+        enqueue(resId);
+    }
+
+    private void enqueue(Object source) {
+        if (mPending.getAndSet(new Request(source, mGeneration)) == null) {
+            mExecutor.execute(mDrainPending);
+        }
+    }
+
+    /**
+     * Drops the icon waiting to be decoded, and any icon asked for before now that is still
+     * being decoded or not yet handed to the listener.  Only called on the main thread.
+     */
+    public void cancel() {
+        mGeneration++;
+        mPending.set(null);
+    }
+
+    public void shutdown() {
+        mPending.set(null);
+        mExecutor.shutdownNow();
+        mMainHandler.removeCallbacksAndMessages(null);
+    }
+
+    private void publish(final Bitmap icon, final int generation) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // Dropped if it was cancelled while being decoded.
+                if (generation == mGeneration) {
+                    mListener.onIconDecoded(icon);
+                }
+            }
+        });
+    }
+
+    private Bitmap decode(Asset asset) {
+        String key = asset.getDigest();
+        if (key == null) {
+            byte[] data = fetch(asset);
+            return data == null ? null : decodeSampled(data);
+        }
+
+        Bitmap icon = mCache.getBitmap(key);
+        if (icon != null) {
+            return icon;
+        }
+        byte[] data = mCache.readBytes(key);
+        if (data == null) {
+            data = fetch(asset);
+            if (data == null) {
+                return null;
+            }
+            mCache.writeBytes(key, data);
+        }
+        icon = decodeSampled(data);
+        if (icon != null) {
+            mCache.putBitmap(key, icon);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Icon cache: " + mCache.getMemoryHits() + " memory hits, "
+                    + mCache.getDiskHits() + " disk hits, " + mCache.getMisses() + " misses");
+        }
+        return icon;
+    }
+
+    private Bitmap decodeResource(int resId) {
+        // Bundled icons are always at hand, so they are only cached in memory.
+        String key = "res_" + resId;
+        Bitmap icon = mCache.getBitmap(key);
+        if (icon != null) {
+            return icon;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mResources, resId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.e(TAG, "Couldn't decode weather icon " + resId);
+            return null;
+        }
+        prepareOptions(options);
+        icon = BitmapFactory.decodeResource(mResources, resId, options);
+        if (icon != null) {
+            mCache.putBitmap(key, icon);
+        }
+        return icon;
+    }
+
+    /**
+     * Transfers the asset from the phone.
+     */
+    private byte[] fetch(Asset asset) {
+        try {
+            // Blocks until the asset has been transferred from the phone.
+            InputStream in = Wearable.DataApi.getFdForAsset(mGoogleApiClient, asset)
+                    .await().getInputStream();
+            if (in == null) {
+                Log.e(TAG, "Requested an unknown Asset.");
+                return null;
+            }
+            readFully(in);
+            return mBuffer.toByteArray();
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't read the weather icon", e);
+            return null;
+        }
+    }
+
+    private void readFully(InputStream in) throws IOException {
+        mBuffer.reset();
+        try {
+            int read;
+            while ((read = in.read(mChunk)) != -1) {
+                mBuffer.write(mChunk, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Decodes an image at the smallest power-of-two reduction that is still at least the target
+     * size.
+     */
+    Bitmap decodeSampled(byte[] data) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.e(TAG, "Couldn't decode the weather icon");
+            return null;
+        }
+
+        prepareOptions(options);
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    /**
+     * Turns options filled in by a bounds-only decode into ones for the real decode.
+     */
+    private void prepareOptions(BitmapFactory.Options options) {
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                mTargetWidth, mTargetHeight);
+    }
+
+    static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+        while (width / (inSampleSize * 2) >= targetWidth
+                && height / (inSampleSize * 2) >= targetHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.util.Log;
+
+import com.example.android.sunshine.shared.WeatherPayload;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The last weather the watch received, kept in a file so a newly created watch face can draw
+ * it on its first frame instead of waiting for the data layer.
+ *
+ * Holds the data of each {@link WeatherPayload} item, by path.  Legacy items, which need their
+ * assets, aren't kept.
+ */
+public class WeatherSnapshot {
+    private static final String TAG = "WeatherSnapshot";
+
+    static final String FILE_NAME = "weather_snapshot";
+    // Version 1 didn't record when the weather was received.
+    private static final int FORMAT_VERSION_UNTIMED = 1;
+    private static final int FORMAT_VERSION = 2;
+
+    private final File mFile;
+    private long mReceivedMillis;
+
+    public WeatherSnapshot(File filesDir) {
+        mFile = new File(filesDir, FILE_NAME);
+    }
+
+    /**
+     * @return the items last saved, in the order they were saved; empty if there are none.
+     */
+    public Map<String, byte[]> load() {
+        LinkedHashMap<String, byte[]> items = new LinkedHashMap<String, byte[]>();
+        mReceivedMillis = 0;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            int version = in.readInt();
+            if (version == FORMAT_VERSION) {
+                mReceivedMillis = in.readLong();
+            } else if (version == FORMAT_VERSION_UNTIMED) {
+                // The best guess there is.
+                mReceivedMillis = mFile.lastModified();
+            } else {
+                return items;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                byte[] data = new byte[in.readUnsignedShort()];
+                in.readFully(data);
+                items.put(path, data);
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing received yet.
+        } catch (IOException e) {
+            Log.w(TAG, "Ignoring unreadable snapshot", e);
+            items.clear();
+            mReceivedMillis = 0;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing useful to do.
+                }
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Replaces the snapshot.  The file is written under a temporary name and then renamed, so
+     * a crash never leaves a truncated snapshot behind.
+     *
+     * @param receivedMillis when the weather was last received or read from the data layer.
+     */
+    public void save(Map<String, byte[]> items, long receivedMillis) {
+        File temp = new File(mFile.getPath() + ".tmp");
+        FileOutputStream file = null;
+        try {
+            file = new FileOutputStream(temp);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(receivedMillis);
+            out.writeInt(items.size());
+            for (Map.Entry<String, byte[]> item : items.entrySet()) {
+                out.writeUTF(item.getKey());
+                out.writeShort(item.getValue().length);
+                out.write(item.getValue());
+            }
+            out.flush();
+            file.getFD().sync();
+            out.close();
+            file = null;
+            if (!temp.renameTo(mFile)) {
+                throw new IOException("Couldn't rename " + temp);
+            }
+            mReceivedMillis = receivedMillis;
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't save the weather snapshot", e);
+            temp.delete();
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    // Nothing useful to do.
+                }
+            }
+        }
+    }
+
+    /**
+     * @return when the weather in the snapshot was last received or read from the data layer,
+     * as of the last {@link #load()} or {@link #save(Map, long)}; 0 if it never was.
+     */
+    public long getReceivedMillis() {
+        return mReceivedMillis;
+    }
+}